@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fixtures;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class FixtureIT
+{
+    @Test
+    public void restoreRemovesRowsAddedSinceTheSnapshot() throws Exception{
+        try (CqlSession cqlSession = connect()) {
+            Map<Integer, String> people = new TreeMap<>();
+            for (Row row : cqlSession.execute("SELECT id, name FROM fixtures.people")) {
+                people.put(row.getInt(0), row.getString(1));
+            }
+            assertEquals("{1=Ada, 2=Grace}", people.toString());
+        }
+    }
+
+    @Test
+    public void restoreCreatesDroppedTablesWithTheirIndexes() throws Exception{
+        try (CqlSession cqlSession = connect()) {
+            assertEquals(2, cqlSession.execute("SELECT count(*) FROM fixtures.\"Cities\"").one().getLong(0));
+            Row row = cqlSession.execute("SELECT name FROM fixtures.\"Cities\" WHERE country = 'IT'").one();
+            assertNotNull(row);
+            assertEquals("Turin", row.getString(0));
+        }
+    }
+
+    private static CqlSession connect() {
+        return CqlSession.builder()
+                .addContactPoint(new InetSocketAddress("localhost", Integer.getInteger("nativeTransportPort", 9042)))
+                .withLocalDatacenter("datacenter1")
+                .build();
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+def log = new File(basedir, 'build.log').text
+assert log.contains('Captured fixture seed with ')
+assert log.contains('Truncated 1 keyspace(s)')
+assert log.contains('Restored fixture seed with ')
+
+// the reset emptied the table the snapshot had captured
+def afterReset = new File(basedir, 'target/after-reset.csv').readLines()
+assert afterReset.size() == 2
+assert afterReset[1] == '0'
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package imports;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class ImportIT
+{
+    @Test
+    public void importsCommaSeparatedValues() throws Exception{
+        try (CqlSession cqlSession = connect()) {
+            assertEquals(3, cqlSession.execute("SELECT count(*) FROM imports.people").one().getLong(0));
+            Row ada = cqlSession.execute("SELECT name, born, tags FROM imports.people WHERE id = 1").one();
+            assertEquals("Ada", ada.getString(0));
+            assertEquals(LocalDate.of(1815, 12, 10), ada.getLocalDate(1));
+            assertEquals(new HashSet<>(Arrays.asList("math", "engines")), ada.getSet(2, String.class));
+            Row grace = cqlSession.execute("SELECT name, tags FROM imports.people WHERE id = 2").one();
+            assertEquals("Hopper, Grace", grace.getString(0));
+            assertEquals(Collections.singleton("navy"), grace.getSet(1, String.class));
+            Row nobody = cqlSession.execute("SELECT name, born FROM imports.people WHERE id = 3").one();
+            assertEquals("Nobody", nobody.getString(0));
+            assertNull(nobody.getLocalDate(1));
+        }
+    }
+
+    @Test
+    public void importsJsonLinesLeavingMissingKeysUnset() throws Exception{
+        try (CqlSession cqlSession = connect()) {
+            assertEquals(3, cqlSession.execute("SELECT count(*) FROM imports.events").one().getLong(0));
+            Row kept = cqlSession.execute(
+                    "SELECT kind, payload FROM imports.events WHERE day = '2024-01-01' AND seq = 1").one();
+            assertEquals("published", kept.getString(0));
+            assertEquals("kept", kept.getString(1));
+            Row quoted = cqlSession.execute(
+                    "SELECT payload FROM imports.events WHERE day = '2024-01-01' AND seq = 2").one();
+            assertEquals("it's \"quoted\"", quoted.getString(0));
+            Row nulled = cqlSession.execute(
+                    "SELECT payload FROM imports.events WHERE day = '2024-01-02' AND seq = 1").one();
+            assertNull(nulled.getString(0));
+        }
+    }
+
+    private static CqlSession connect() {
+        return CqlSession.builder()
+                .addContactPoint(new InetSocketAddress("localhost", Integer.getInteger("nativeTransportPort", 9042)))
+                .withLocalDatacenter("datacenter1")
+                .build();
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+// the first module started the shared node, the second used it, and the stop goal of the second stopped it
+def log = new File(basedir, 'build.log').text
+assert log.count('Using free ports:') == 1
+assert log.count('Using the shared Cassandra instance') == 1
+assert log.count('Cassandra has stopped.') == 1
+
+def ports = new Properties()
+new File(basedir, 'first/target/cassandra/ports.properties').withInputStream { ports.load(it) }
+try {
+    new Socket('127.0.0.1', ports.getProperty('nativeTransportPort') as int).close()
+    assert false : 'the shared node is still running'
+} catch (ConnectException expected) {
+}
@@ -21,14 +21,23 @@ package org.codehaus.mojo.cassandra;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
 import java.math.BigInteger;
+import java.net.URI;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
@@ -63,7 +72,7 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
     /**
      * The enclosing project.
      */
-    @Parameter(readonly = true)
+    @Parameter(defaultValue = "${project}", readonly = true)
     protected MavenProject project;
 
     /**
@@ -120,6 +129,17 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
     @Parameter
     private String yaml;
 
+    /**
+     * The name of a bundled configuration profile to apply on top of the default configuration and before
+     * {@code yaml}. The {@code fast-test} profile trades durability for speed: a single token, no auto snapshots,
+     * small commit log segments and caches, unthrottled compaction, short request timeouts, no wait for gossip to
+     * settle and no fsync of the system keyspaces.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.profile")
+    protected String profile;
+
     /**
      * Address to use for the RPC interface. Do not change this unless you really know what you are doing.
      *
@@ -192,11 +212,85 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
     protected String stopKey;
 
     /**
-     * Number of megabytes to limit the cassandra JVM to.
+     * Number of megabytes to limit the cassandra JVM to. Defaults to 512, or to the heap size of {@code jvmProfile}.
+     *
+     */
+    @Parameter(property = "cassandra.maxMemory")
+    protected Integer maxMemory;
+
+    /**
+     * A set of JVM options to launch the node with, one of:
+     * <ul>
+     * <li>{@code fast-start}: the serial collector and the C1 compiler only, for short lived test runs;</li>
+     * <li>{@code throughput}: the G1 collector with a fixed heap, for long or heavy test runs;</li>
+     * <li>{@code low-memory}: a small heap, the serial collector and capped direct memory and code cache, for running
+     * many nodes on one host;</li>
+     * <li>{@code custom}: nothing but {@code jvmArgs}.</li>
+     * </ul>
+     * The profiles size the heap from the physical memory of the host, shared between the nodes that are started
+     * together, unless {@code maxMemory} is set. Without a profile only {@code maxMemory} is applied.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.jvmProfile")
+    protected String jvmProfile;
+
+    /**
+     * Additional options to launch the node's JVM with, added after those of {@code jvmProfile} so that they take
+     * precedence.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.jvmArgs")
+    protected List<String> jvmArgs;
+
+    /**
+     * The files generated for a cassandra home keyed by name and input digest, for the other homes to link to.
+     */
+    private final Map<String, File> sharedResources = new HashMap<>();
+
+    /**
+     * When {@code true}, an AppCDS archive of the classes Cassandra loads is kept in {@code bin/cassandra.jsa} and is
+     * mapped by every start once it exists, saving most of the class loading and verification work. On Java 13 or
+     * newer the archive is recorded when the node first exits; on Java 11 and 12 the classes are listed when the node
+     * first exits and archived by the next start. The archive is discarded and recorded again whenever the classpath
+     * or the Java executable changes. Class data sharing is skipped, with a warning, when the Java executable of the
+     * node is older than Java 11 or when a directory is on the classpath, such as with {@code addMainClasspath}. The
+     * {@code conf} directory of the cassandra home is left off the classpath of the node, which is pointed at its
+     * configuration files by system properties, so resources kept there, such as {@code cassandra-rackdc.properties},
+     * are not found.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.classDataSharing", defaultValue = "false")
+    protected boolean classDataSharing;
+
+    /**
+     * Where the node keeps its data, commit log and caches. With {@code disk} they live in {@code cassandraDir}; with
+     * {@code memory} they live in {@code memoryStorageDirectory}, which should be a RAM backed file system, and are
+     * linked from {@code cassandraDir}. Memory storage is removed again by the {@code stop} and {@code delete} goals.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.storage", defaultValue = "disk")
+    protected String storage;
+
+    /**
+     * The RAM backed directory to place the node's storage in when {@code storage} is {@code memory}.
      *
+     * @since 4.0.1
      */
-    @Parameter(property = "cassandra.maxMemory", defaultValue = "512")
-    protected int maxMemory;
+    @Parameter(property = "cassandra.memoryStorageDirectory", defaultValue = "/dev/shm")
+    protected File memoryStorageDirectory;
+
+    /**
+     * The number of megabytes a node is expected to need when {@code storage} is {@code memory}. If less space is
+     * available in {@code memoryStorageDirectory} the node is stored on disk instead.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.memoryStorageFootprint", defaultValue = "256")
+    protected int memoryStorageFootprint;
 
     /**
      * The keyspace against which individual operations will be executed
@@ -245,8 +339,6 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
      * @throws java.io.IOException if something went wrong.
      */
     protected void createCassandraJar(File jarFile, String mainClass, File cassandraDir) throws IOException {
-        File conf = new File(cassandraDir, "conf");
-
         try (FileOutputStream fos = new FileOutputStream(jarFile);
                 JarOutputStream jos = new JarOutputStream(fos)) {
             jos.setLevel(JarOutputStream.STORED);
@@ -254,56 +346,206 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
 
             Manifest man = new Manifest();
 
-            // we can't use StringUtils.join here since we need to add a '/' to
-            // the end of directory entries - otherwise the jvm will ignore them.
-            StringBuilder cp = new StringBuilder();
-            cp.append(new URL(conf.toURI().toASCIIString()).toExternalForm());
-            cp.append(' ');
-            getLog().debug("Adding plugin artifact: " + ArtifactUtils.versionlessKey(pluginArtifact)
+            man.getMainAttributes().putValue("Manifest-Version", "1.0");
+            man.getMainAttributes().putValue("Class-Path", getJarClasspath(jarFile, cassandraDir));
+            man.getMainAttributes().putValue("Main-Class", mainClass);
+
+            man.write(jos);
+        }
+    }
+
+    /**
+     * Builds the {@code Class-Path} manifest entry of a jar launching Cassandra. The {@code conf} directory is
+     * referenced relative to the jar, so that the jar is the same for every cassandra home. With
+     * {@link #classDataSharing} it is left out, as the JVM does not archive classes while a directory that is not empty
+     * is on the classpath, and Cassandra finds its configuration files through system properties.
+     *
+     * @param jarFile      The jar file.
+     * @param cassandraDir The cassandra home directory.
+     * @return the space separated list of classpath URLs.
+     * @throws java.io.IOException if something went wrong.
+     */
+    private String getJarClasspath(File jarFile, File cassandraDir) throws IOException {
+        String conf = new URL(new File(cassandraDir, "conf").toURI().toASCIIString()).toExternalForm();
+        StringBuilder cp = new StringBuilder();
+        if (!classDataSharing) {
+            cp.append(jarFile.getAbsoluteFile()
+                            .getParentFile()
+                            .toPath()
+                            .relativize(new File(cassandraDir, "conf")
+                                    .getAbsoluteFile()
+                                    .toPath())
+                            .toString()
+                            .replace(File.separatorChar, '/'))
+                    .append("/ ");
+        }
+        for (String url : StringUtils.split(getCassandraClasspath(cassandraDir), " ")) {
+            if (!url.equals(conf)) {
+                cp.append(url).append(' ');
+            }
+        }
+        return cp.toString().trim();
+    }
+
+    /**
+     * Builds the {@code Class-Path} manifest entry used to launch Cassandra.
+     *
+     * @param cassandraDir The cassandra home directory.
+     * @return the space separated list of classpath URLs.
+     * @throws java.io.IOException if something went wrong.
+     */
+    protected String getCassandraClasspath(File cassandraDir) throws IOException {
+        File conf = new File(cassandraDir, "conf");
+
+        // we can't use StringUtils.join here since we need to add a '/' to
+        // the end of directory entries - otherwise the jvm will ignore them.
+        StringBuilder cp = new StringBuilder();
+        cp.append(new URL(conf.toURI().toASCIIString()).toExternalForm());
+        cp.append(' ');
+        getLog().debug("Adding plugin artifact: " + ArtifactUtils.versionlessKey(pluginArtifact) + " to the classpath");
+        cp.append(new URL(pluginArtifact.getFile().toURI().toASCIIString()).toExternalForm());
+        cp.append(' ');
+
+        for (Artifact artifact : this.pluginDependencies) {
+            getLog().debug("Adding plugin dependency artifact: " + ArtifactUtils.versionlessKey(artifact)
                     + " to the classpath");
-            cp.append(new URL(pluginArtifact.getFile().toURI().toASCIIString()).toExternalForm());
+            // NOTE: if File points to a directory, this entry MUST end in '/'.
+            cp.append(new URL(artifact.getFile().toURI().toASCIIString()).toExternalForm());
             cp.append(' ');
+        }
 
-            for (Artifact artifact : this.pluginDependencies) {
-                getLog().debug("Adding plugin dependency artifact: " + ArtifactUtils.versionlessKey(artifact)
-                        + " to the classpath");
-                // NOTE: if File points to a directory, this entry MUST end in '/'.
-                cp.append(new URL(artifact.getFile().toURI().toASCIIString()).toExternalForm());
+        if (addMainClasspath || addTestClasspath) {
+            if (addTestClasspath) {
+                getLog().debug("Adding: " + testClassesDirectory + " to the classpath");
+                cp.append(new URL(testClassesDirectory.toURI().toASCIIString()).toExternalForm());
                 cp.append(' ');
             }
-
-            if (addMainClasspath || addTestClasspath) {
-                if (addTestClasspath) {
-                    getLog().debug("Adding: " + testClassesDirectory + " to the classpath");
-                    cp.append(new URL(testClassesDirectory.toURI().toASCIIString()).toExternalForm());
-                    cp.append(' ');
-                }
-                if (addMainClasspath) {
-                    getLog().debug("Adding: " + classesDirectory + " to the classpath");
-                    cp.append(new URL(classesDirectory.toURI().toASCIIString()).toExternalForm());
+            if (addMainClasspath) {
+                getLog().debug("Adding: " + classesDirectory + " to the classpath");
+                cp.append(new URL(classesDirectory.toURI().toASCIIString()).toExternalForm());
+                cp.append(' ');
+            }
+            for (Artifact artifact : (Set<Artifact>) this.project.getArtifacts()) {
+                if ("jar".equals(artifact.getType())
+                        && !Artifact.SCOPE_PROVIDED.equals(artifact.getScope())
+                        && (!Artifact.SCOPE_TEST.equals(artifact.getScope()) || addTestClasspath)) {
+                    getLog().debug("Adding dependency: " + ArtifactUtils.versionlessKey(artifact)
+                            + " to the classpath");
+                    // NOTE: if File points to a directory, this entry MUST end in '/'.
+                    cp.append(new URL(artifact.getFile().toURI().toASCIIString()).toExternalForm());
                     cp.append(' ');
                 }
-                for (Artifact artifact : (Set<Artifact>) this.project.getArtifacts()) {
-                    if ("jar".equals(artifact.getType())
-                            && !Artifact.SCOPE_PROVIDED.equals(artifact.getScope())
-                            && (!Artifact.SCOPE_TEST.equals(artifact.getScope()) || addTestClasspath)) {
-                        getLog().debug("Adding dependency: " + ArtifactUtils.versionlessKey(artifact)
-                                + " to the classpath");
-                        // NOTE: if File points to a directory, this entry MUST end in '/'.
-                        cp.append(new URL(artifact.getFile().toURI().toASCIIString()).toExternalForm());
-                        cp.append(' ');
-                    }
-                }
             }
+        }
 
-            man.getMainAttributes().putValue("Manifest-Version", "1.0");
-            man.getMainAttributes().putValue("Class-Path", cp.toString().trim());
-            man.getMainAttributes().putValue("Main-Class", mainClass);
+        return cp.toString().trim();
+    }
 
-            man.write(jos);
+    /**
+     * Returns the classpath used to launch Cassandra as a list of URLs.
+     *
+     * @param cassandraDir The cassandra home directory.
+     * @return the classpath URLs.
+     * @throws java.io.IOException if something went wrong.
+     */
+    protected List<URL> getCassandraClasspathUrls(File cassandraDir) throws IOException {
+        List<URL> urls = new ArrayList<>();
+        for (String url : StringUtils.split(getCassandraClasspath(cassandraDir), " ")) {
+            urls.add(new URL(url));
+        }
+        return urls;
+    }
+
+    /**
+     * Returns {@code true} if the node's storage should be placed in {@link #memoryStorageDirectory}.
+     *
+     * @return {@code true} if the node's storage should be placed in {@link #memoryStorageDirectory}.
+     */
+    protected boolean isMemoryStorage() {
+        return "memory".equalsIgnoreCase(storage);
+    }
+
+    /**
+     * Places the storage directories of a cassandra home according to {@link #storage}. Must be called before anything
+     * is written to them.
+     *
+     * @param cassandraDir The cassandra home directory.
+     * @throws IOException if something goes wrong.
+     */
+    protected void prepareStorage(File cassandraDir) throws IOException {
+        if (!isMemoryStorage()) {
+            if (!"disk".equalsIgnoreCase(storage)) {
+                throw new IOException("Unknown storage " + storage + ", expected disk or memory");
+            }
+            return;
+        }
+        List<String> unlinked = new ArrayList<>();
+        for (String name : Utils.STORAGE_DIRECTORIES) {
+            Path link = new File(cassandraDir, name).toPath();
+            if (Files.isSymbolicLink(link)) {
+                // the RAM backed file system may have been cleared since
+                Files.createDirectories(Files.readSymbolicLink(link));
+            } else if (!Files.exists(link)) {
+                unlinked.add(name);
+            } else {
+                getLog().warn("Keeping " + link + " on disk as it already exists");
+            }
+        }
+        if (unlinked.isEmpty()) {
+            return;
+        }
+        File root = new File(
+                memoryStorageDirectory,
+                "cassandra-" + Utils.digest(cassandraDir.getAbsolutePath()).substring(0, 16));
+        try {
+            Files.createDirectories(root.toPath());
+            long available = Files.getFileStore(root.toPath()).getUsableSpace() / (1024L * 1024L);
+            if (available < memoryStorageFootprint) {
+                getLog().warn("Only " + available + "MB available in " + memoryStorageDirectory + ", "
+                        + memoryStorageFootprint + "MB needed. Storing Cassandra on disk instead.");
+                Files.deleteIfExists(root.toPath());
+                return;
+            }
+            Files.createDirectories(cassandraDir.toPath());
+            for (String name : unlinked) {
+                Path target = new File(root, name).toPath();
+                Files.createDirectories(target);
+                Files.createSymbolicLink(new File(cassandraDir, name).toPath(), target);
+            }
+            getLog().info("Storing Cassandra in " + root);
+        } catch (IOException | UnsupportedOperationException e) {
+            getLog().warn("Could not store Cassandra in " + memoryStorageDirectory + ", storing it on disk instead: "
+                    + e.getLocalizedMessage());
+            Utils.deleteLinkedStorage(cassandraDir, getLog());
         }
     }
 
+    /**
+     * Computes a fingerprint of everything that determines how a node behaves: the Cassandra version, its
+     * configuration, the JVM and its arguments, and the classpath.
+     *
+     * @param cassandraDir The cassandra home directory.
+     * @param commandLine  The command line the node is launched with.
+     * @return the fingerprint.
+     * @throws IOException if something goes wrong.
+     */
+    protected String getFingerprint(File cassandraDir, CommandLine commandLine) throws IOException {
+        StringBuilder arguments = new StringBuilder(commandLine.getExecutable());
+        for (String argument : commandLine.getArguments()) {
+            // the class data sharing arguments change once the archive has been recorded
+            if (!argument.startsWith("-XX:SharedArchiveFile=")
+                    && !argument.startsWith("-XX:ArchiveClassesAtExit=")
+                    && !argument.startsWith("-XX:DumpLoadedClassList=")) {
+                arguments.append(' ').append(argument);
+            }
+        }
+        return Utils.digest(
+                getCassandraVersion(),
+                FileUtils.fileRead(new File(new File(cassandraDir, "conf"), "cassandra.yaml")),
+                arguments.toString(),
+                getCassandraClasspath(cassandraDir));
+    }
+
     /**
      * Creates the cassandra home directory.
      *
@@ -345,35 +587,33 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
                 }
             }
         }
-        File cassandraYaml = new File(conf, "cassandra.yaml");
-        if (Utils.shouldGenerateResource(project, cassandraYaml)) {
-            getLog().debug((cassandraYaml.isFile() ? "Updating " : "Creating ") + cassandraYaml);
-            createCassandraYaml(
-                    cassandraYaml,
-                    data,
-                    commitlog,
-                    savedCaches,
-                    listenAddress,
-                    rpcAddress,
-                    initialToken,
-                    seeds,
-                    cdcRawDirectory);
-        }
-        File log4jServerConfig = new File(conf, "log4j-server.xml");
-        if (Utils.shouldGenerateResource(project, log4jServerConfig)) {
-            getLog().debug((log4jServerConfig.isFile() ? "Updating " : "Creating ") + log4jServerConfig);
-            FileUtils.copyURLToFile(getClass().getResource("/log4j2.xml"), log4jServerConfig);
-        }
-        File log4jClientConfig = new File(conf, "log4j-client.xml");
-        if (Utils.shouldGenerateResource(project, log4jClientConfig)) {
-            getLog().debug((log4jClientConfig.isFile() ? "Updating " : "Creating ") + log4jClientConfig);
-            FileUtils.copyURLToFile(getClass().getResource("/log4j2.xml"), log4jClientConfig);
-        }
-        File cassandraJar = new File(bin, "cassandra.jar");
-        if (Utils.shouldGenerateResource(project, cassandraJar)) {
-            getLog().debug((cassandraJar.isFile() ? "Updating " : "Creating ") + cassandraJar);
-            createCassandraJar(cassandraJar, CassandraMonitor.class.getName(), cassandraDir);
-        }
+        GeneratedFiles generated = GeneratedFiles.load(cassandraDir);
+        final String yamlContent = getCassandraYaml(
+                data, commitlog, savedCaches, listenAddress, rpcAddress, initialToken, seeds, cdcRawDirectory);
+        generateResource(
+                generated,
+                new File(conf, "cassandra.yaml"),
+                Utils.digest(yamlContent),
+                file -> FileUtils.fileWrite(file.getAbsolutePath(), yamlContent));
+        final String log4jServer = IOUtil.toString(getClass().getResourceAsStream("/log4j2-server.xml"));
+        generateResource(
+                generated,
+                new File(conf, "log4j-server.xml"),
+                Utils.digest(log4jServer),
+                file -> FileUtils.fileWrite(file.getAbsolutePath(), "UTF-8", log4jServer));
+        final String log4jClient = IOUtil.toString(getClass().getResourceAsStream("/log4j2.xml"));
+        generateResource(
+                generated,
+                new File(conf, "log4j-client.xml"),
+                Utils.digest(log4jClient),
+                file -> FileUtils.fileWrite(file.getAbsolutePath(), "UTF-8", log4jClient));
+        final File cassandraJar = new File(bin, "cassandra.jar");
+        generateResource(
+                generated,
+                cassandraJar,
+                Utils.digest(CassandraMonitor.class.getName(), getJarClasspath(cassandraJar, cassandraDir)),
+                file -> createCassandraJar(file, CassandraMonitor.class.getName(), cassandraDir));
+        generated.store();
         /*
         File nodetoolJar = new File( bin, "nodetool.jar" );
         if ( Utils.shouldGenerateResource( project, nodetoolJar ) )
@@ -385,42 +625,55 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
     }
 
     /**
-     * Generates the {@code cassandra.yaml} file.
+     * Generates a file of the cassandra home unless it was already generated from the same inputs. A file generated
+     * from the same inputs for another home, such as another node of a cluster, is hard linked rather than generated
+     * again.
      *
-     * @param cassandraYaml the {@code cassandra.yaml} file.
-     * @param data          The data directory.
-     * @param commitlog     The commitlog directory.
-     * @param savedCaches   The saved caches directory.
+     * @param generated the manifest of the generated files of the cassandra home.
+     * @param file      the file to generate.
+     * @param digest    the digest of the inputs of the file.
+     * @param generator writes the file.
      * @throws IOException If something went wrong.
      */
-    private void createCassandraYaml(
-            File cassandraYaml, File data, File commitlog, File savedCaches, File cdcRawDirectory) throws IOException {
-        createCassandraYaml(
-                cassandraYaml,
-                data,
-                commitlog,
-                savedCaches,
-                listenAddress,
-                rpcAddress,
-                null,
-                new String[] {listenAddress},
-                cdcRawDirectory);
+    private void generateResource(GeneratedFiles generated, File file, String digest, ResourceGenerator generator)
+            throws IOException {
+        if (generated.isCurrent(file, digest)) {
+            getLog().debug("Keeping " + file + " as its inputs have not changed");
+            return;
+        }
+        getLog().debug((file.isFile() ? "Updating " : "Creating ") + file);
+        // the file may be a link to the file of another home, which must not change with it
+        Files.deleteIfExists(file.toPath());
+        File shared = sharedResources.get(file.getName() + ":" + digest);
+        if (shared != null && shared.isFile()) {
+            Utils.linkFile(shared, file);
+        } else {
+            generator.generate(file);
+            sharedResources.put(file.getName() + ":" + digest, file);
+        }
+        generated.record(file, digest);
+    }
+
+    /**
+     * Writes a generated file of the cassandra home.
+     */
+    private interface ResourceGenerator {
+        void generate(File file) throws IOException;
     }
 
     /**
-     * Generates the {@code cassandra.yaml} file.
+     * Generates the content of the {@code cassandra.yaml} file.
      *
-     * @param cassandraYaml the {@code cassandra.yaml} file.
      * @param data          The data directory.
      * @param commitlog     The commitlog directory.
      * @param savedCaches   The saved caches directory.
      * @param listenAddress The address to listen on for storage and other cassandra servers.
      * @param rpcAddress    The address to listen on for clients.
      * @param seeds         The seeds.
+     * @return the content of the {@code cassandra.yaml} file.
      * @throws IOException If something went wrong.
      */
-    private void createCassandraYaml(
-            File cassandraYaml,
+    private String getCassandraYaml(
             File data,
             File commitlog,
             File savedCaches,
@@ -430,7 +683,6 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
             String[] seeds,
             File cdcRawDirectory)
             throws IOException {
-        String defaults = IOUtil.toString(getClass().getResourceAsStream("/cassandra.yaml"));
         StringBuilder config = new StringBuilder();
         config.append("data_file_directories:\n")
                 .append("    - ")
@@ -439,9 +691,13 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
         config.append("commitlog_directory: ").append(commitlog).append("\n");
         config.append("cdc_raw_directory: ").append(cdcRawDirectory).append("\n");
         config.append("saved_caches_directory: ").append(savedCaches).append("\n");
-        config.append("initial_token: ")
-                .append(initialToken == null || "null".equals(initialToken) ? "" : initialToken.toString())
-                .append("\n");
+        if (initialToken == null || "null".equals(initialToken)) {
+            config.append("initial_token: \n");
+        } else {
+            // a single token per node, otherwise Cassandra refuses to start
+            config.append("num_tokens: 1\n");
+            config.append("initial_token: ").append(initialToken).append("\n");
+        }
         config.append("listen_address: ").append(listenAddress).append("\n");
         config.append("storage_port: ").append(storagePort).append("\n");
         config.append("rpc_address: ").append(rpcAddress).append("\n");
@@ -461,8 +717,74 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
                 config.append("\"").append("\n");
             }
         }
-        FileUtils.fileWrite(
-                cassandraYaml.getAbsolutePath(), Utils.merge(Utils.merge(defaults, yaml), config.toString()));
+        return Utils.merge(getConfiguredYaml(), config.toString());
+    }
+
+    /**
+     * Returns the bundled defaults with the user supplied {@link #yaml} applied on top, i.e. the configuration before
+     * any of the node specific directories, addresses and ports are added.
+     *
+     * @return the configured Yaml.
+     * @throws IOException If something went wrong.
+     */
+    protected String getConfiguredYaml() throws IOException {
+        String defaults = IOUtil.toString(getClass().getResourceAsStream("/cassandra.yaml"));
+        if (StringUtils.isBlank(profile)) {
+            return Utils.merge(defaults, yaml);
+        }
+        try (InputStream in = getProfileResource(".yaml")) {
+            return Utils.merge(Utils.merge(defaults, IOUtil.toString(in)), yaml);
+        }
+    }
+
+    /**
+     * Returns the system properties the configured {@link #profile} passes to Cassandra.
+     *
+     * @return the system properties, empty if there is no profile.
+     * @throws IOException If something went wrong.
+     */
+    protected Map<String, String> getProfileSystemProperties() throws IOException {
+        Map<String, String> result = new LinkedHashMap<>();
+        if (StringUtils.isNotBlank(profile)) {
+            InputStream in = getClass().getResourceAsStream("/profiles/" + profile + ".properties");
+            if (in != null) {
+                Properties properties = new Properties();
+                try {
+                    properties.load(in);
+                } finally {
+                    in.close();
+                }
+                for (String name : new TreeSet<>(properties.stringPropertyNames())) {
+                    result.put(name, properties.getProperty(name));
+                }
+            }
+        }
+        return result;
+    }
+
+    private InputStream getProfileResource(String extension) throws IOException {
+        InputStream in = getClass().getResourceAsStream("/profiles/" + profile + extension);
+        if (in == null) {
+            throw new IOException("Unknown Cassandra profile: " + profile);
+        }
+        return in;
+    }
+
+    /**
+     * Returns the version of Cassandra that the plugin will launch.
+     *
+     * @return the version of the {@code cassandra-all} plugin dependency or {@code unknown} if it cannot be found.
+     */
+    protected String getCassandraVersion() {
+        if (pluginDependencies != null) {
+            for (Artifact artifact : pluginDependencies) {
+                if ("org.apache.cassandra".equals(artifact.getGroupId())
+                        && "cassandra-all".equals(artifact.getArtifactId())) {
+                    return artifact.getBaseVersion();
+                }
+            }
+        }
+        return "unknown";
     }
 
     /**
@@ -568,7 +890,10 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
             throws IOException {
         createCassandraHome(cassandraDir, listenAddress, rpcAddress, initialToken, seeds);
         CommandLine commandLine = newJavaCommandLine();
-        commandLine.addArgument("-Xmx" + maxMemory + "m");
+        addJvmArguments(commandLine);
+        if (classDataSharing) {
+            addClassDataSharingArguments(commandLine, cassandraDir);
+        }
 
         if (useJdk11Options()) {
             commandLine.addArgument("-Djdk.attach.allowAttachSelf=true");
@@ -616,6 +941,10 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
                         .toURL()
                         .toString());
         commandLine.addArgument("-Dlog4j.configurationFile=" + log4jConfigurationFile);
+        commandLine.addArgument("-Dcassandra.config="
+                + new File(new File(cassandraDir, "conf"), "cassandra.yaml")
+                        .toURI()
+                        .toURL());
         commandLine.addArgument("-Dcom.sun.management.jmxremote=" + jmxRemoteEnabled);
         commandLine.addArgument("-DcassandraLogLevel=" + logLevel);
         if (jmxRemoteEnabled) {
@@ -624,6 +953,10 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
             commandLine.addArgument("-Dcom.sun.management.jmxremote.authenticate=false");
         }
 
+        for (Map.Entry<String, String> entry : getProfileSystemProperties().entrySet()) {
+            commandLine.addArgument("-D" + entry.getKey() + "=" + entry.getValue());
+        }
+
         if (systemPropertyVariables != null && !systemPropertyVariables.isEmpty()) {
             for (Map.Entry<String, String> entry : systemPropertyVariables.entrySet()) {
                 commandLine.addArgument("-D" + entry.getKey() + "=" + entry.getValue());
@@ -637,6 +970,198 @@ public abstract class AbstractCassandraMojo extends AbstractMojo {
         return commandLine;
     }
 
+    /**
+     * Adds the heap size and the options of {@link #jvmProfile} followed by {@link #jvmArgs}.
+     *
+     * @param commandLine the command line to add the arguments to.
+     * @throws IOException if the profile is unknown.
+     */
+    private void addJvmArguments(CommandLine commandLine) throws IOException {
+        String profile = StringUtils.isBlank(jvmProfile) ? "" : jvmProfile.trim();
+        if ("fast-start".equals(profile)) {
+            int heap = getHeapSize(8, 512, 1024);
+            commandLine.addArgument("-Xms" + heap + "m");
+            commandLine.addArgument("-Xmx" + heap + "m");
+            commandLine.addArgument("-XX:+UseSerialGC");
+            commandLine.addArgument("-XX:TieredStopAtLevel=1");
+            commandLine.addArgument("-Xss256k");
+            commandLine.addArgument("-Xshare:auto");
+        } else if ("throughput".equals(profile)) {
+            int heap = getHeapSize(4, 1024, 4096);
+            commandLine.addArgument("-Xms" + heap + "m");
+            commandLine.addArgument("-Xmx" + heap + "m");
+            commandLine.addArgument("-XX:+UseG1GC");
+            commandLine.addArgument("-XX:MaxGCPauseMillis=200");
+            commandLine.addArgument("-XX:+ParallelRefProcEnabled");
+            commandLine.addArgument("-XX:MaxDirectMemorySize=" + heap / 2 + "m");
+            commandLine.addArgument("-Xss256k");
+        } else if ("low-memory".equals(profile)) {
+            int heap = getHeapSize(16, 256, 512);
+            commandLine.addArgument("-Xms" + heap + "m");
+            commandLine.addArgument("-Xmx" + heap + "m");
+            commandLine.addArgument("-XX:+UseSerialGC");
+            commandLine.addArgument("-XX:TieredStopAtLevel=1");
+            commandLine.addArgument("-XX:ReservedCodeCacheSize=64m");
+            commandLine.addArgument("-XX:MaxDirectMemorySize=128m");
+            commandLine.addArgument("-Xss256k");
+        } else if ("custom".equals(profile)) {
+            if (maxMemory != null) {
+                commandLine.addArgument("-Xmx" + maxMemory + "m");
+            }
+        } else if (profile.isEmpty()) {
+            commandLine.addArgument("-Xmx" + (maxMemory == null ? 512 : maxMemory) + "m");
+        } else {
+            throw new IOException("Unknown JVM profile: " + profile);
+        }
+        if (jvmArgs != null) {
+            for (String jvmArg : jvmArgs) {
+                if (!StringUtils.isBlank(jvmArg)) {
+                    commandLine.addArgument(jvmArg.trim(), false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns {@link #maxMemory} if set, otherwise the given share of the physical memory of the host divided between
+     * the nodes started together and kept within the given bounds.
+     *
+     * @param share     the fraction of the physical memory, as its denominator.
+     * @param minimum   the smallest heap to use, in megabytes.
+     * @param maximum   the largest heap to use, in megabytes.
+     * @return the heap size in megabytes.
+     */
+    private int getHeapSize(int share, int minimum, int maximum) {
+        if (maxMemory != null) {
+            return maxMemory;
+        }
+        long physical = 0L;
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            physical = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+        }
+        if (physical <= 0L) {
+            return minimum;
+        }
+        long heap = physical / (1024L * 1024L) / share / Math.max(1, getNodeCount());
+        int result = (int) Math.max(minimum, Math.min(maximum, heap));
+        getLog().debug("Sized the heap to " + result + "m from " + physical / (1024L * 1024L) + "m of memory");
+        return result;
+    }
+
+    /**
+     * Returns the number of nodes that are started together and share the memory of the host.
+     *
+     * @return the number of nodes.
+     */
+    protected int getNodeCount() {
+        return 1;
+    }
+
+    /**
+     * Adds the arguments to either record or use the AppCDS archive kept next to {@code bin/cassandra.jar}.
+     *
+     * @param commandLine  the command line to add the arguments to.
+     * @param cassandraDir the cassandra home directory.
+     * @throws IOException if the archive state could not be read or written.
+     */
+    private void addClassDataSharingArguments(CommandLine commandLine, File cassandraDir) throws IOException {
+        String java = commandLine.getExecutable();
+        int javaVersion = Utils.getJavaVersion(java);
+        if (javaVersion < 11) {
+            getLog().warn("Class data sharing needs Java 11 or newer, "
+                    + (javaVersion == 0 ? "could not find the version of " : "found Java " + javaVersion + " at ")
+                    + java + ", starting Cassandra without it.");
+            return;
+        }
+        File bin = new File(cassandraDir, "bin");
+        File cassandraJar = new File(bin, "cassandra.jar");
+        for (String url : StringUtils.split(getJarClasspath(cassandraJar, cassandraDir), " ")) {
+            // the JVM refuses to archive classes when a directory that is not empty is on the classpath
+            File file = new File(URI.create(url));
+            if (file.isDirectory()) {
+                getLog().warn("Class data sharing does not support directories on the classpath, starting Cassandra"
+                        + " without it as " + file + " is on the classpath.");
+                return;
+            }
+        }
+        File archive = new File(bin, "cassandra.jsa");
+        File classList = new File(bin, "cassandra.classlist");
+        File archiveKey = new File(bin, "cassandra.jsa.key");
+        String key = Utils.digest(java, Integer.toString(javaVersion), getCassandraClasspath(cassandraDir));
+        if (!(archiveKey.isFile() && key.equals(FileUtils.fileRead(archiveKey)))) {
+            if (archive.isFile() || classList.isFile()) {
+                getLog().debug("Classpath changed, discarding class data sharing archive " + archive);
+            }
+            Files.deleteIfExists(archive.toPath());
+            Files.deleteIfExists(classList.toPath());
+            FileUtils.fileWrite(archiveKey, key);
+        }
+        if (!archive.isFile() && classList.isFile()) {
+            if (Utils.queryMonitor(listenAddress, stopPort, stopKey, "status") != null) {
+                // the node still running is listing its classes, the list is only complete once it exits
+                getLog().debug("Not archiving " + classList + " while Cassandra is running.");
+            } else {
+                dumpClassDataSharingArchive(java, cassandraJar, classList, archive);
+            }
+        }
+        if (archive.isFile()) {
+            commandLine.addArgument(
+                    "-XX:SharedArchiveFile="
+                            + org.apache.commons.exec.util.StringUtils.quoteArgument(archive.getAbsolutePath()),
+                    false);
+        } else if (javaVersion >= 13) {
+            getLog().info("Recording class data sharing archive " + archive + " when Cassandra exits.");
+            commandLine.addArgument(
+                    "-XX:ArchiveClassesAtExit="
+                            + org.apache.commons.exec.util.StringUtils.quoteArgument(archive.getAbsolutePath()),
+                    false);
+        } else {
+            // Java 11 and 12 only build archives from a list of classes, recorded here and archived by the next start
+            getLog().info("Listing the classes of a class data sharing archive in " + classList
+                    + " when Cassandra exits.");
+            commandLine.addArgument(
+                    "-XX:DumpLoadedClassList="
+                            + org.apache.commons.exec.util.StringUtils.quoteArgument(classList.getAbsolutePath()),
+                    false);
+        }
+    }
+
+    /**
+     * Archives the classes listed by an earlier run of Cassandra, for the Java versions that cannot record an archive
+     * when the JVM exits.
+     *
+     * @param java         the Java executable launching Cassandra.
+     * @param cassandraJar the jar launching Cassandra, whose classpath the archive is for.
+     * @param classList    the list of the classes to archive.
+     * @param archive      the archive to create.
+     * @throws IOException if a failed archive could not be deleted.
+     */
+    private void dumpClassDataSharingArchive(String java, File cassandraJar, File classList, File archive)
+            throws IOException {
+        CommandLine commandLine = new CommandLine(java);
+        commandLine.addArgument("-Xshare:dump");
+        commandLine.addArgument(
+                "-XX:SharedClassListFile="
+                        + org.apache.commons.exec.util.StringUtils.quoteArgument(classList.getAbsolutePath()),
+                false);
+        commandLine.addArgument(
+                "-XX:SharedArchiveFile="
+                        + org.apache.commons.exec.util.StringUtils.quoteArgument(archive.getAbsolutePath()),
+                false);
+        commandLine.addArgument("-cp");
+        commandLine.addArgument(cassandraJar.getAbsolutePath(), false);
+        getLog().info("Archiving the classes listed in " + classList + " as " + archive);
+        try {
+            getLog().debug(Utils.execute(commandLine));
+        } catch (IOException e) {
+            getLog().warn("Could not create class data sharing archive " + archive + ": " + e.getLocalizedMessage());
+            Files.deleteIfExists(archive.toPath());
+            // list the classes again
+            Files.deleteIfExists(classList.toPath());
+        }
+    }
+
     /**
      * Creates the command line to launch the {@code nodetool} utility.
      *
@@ -48,13 +48,55 @@ public abstract class AbstractCqlExecMojo extends AbstractCassandraMojo {
      * Should we use the CqlLexer when loading the cql file. This should be better than than the default behaviour
      * which is to just split input on ; since it handles ; in comments and strings.
      *
-     * It is not enabled by default since has not been extensively tested.
+     * It is not enabled by default since has not been extensively tested. Scripts loaded with the {@code script}
+     * parameter are always split by a tokenizer that handles ; in comments, strings and {@code $$} blocks.
      *
      * @since 3.7
      */
     @Parameter(defaultValue = "false")
     protected boolean useCqlLexer = false;
 
+    /**
+     * The maximum number of inserts, updates, deletes and batches sent without waiting for their completion. Any
+     * other statement, conditional updates included, waits for the statements sent before it and is executed on its
+     * own. The default of {@code 1} executes the statements one at a time.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.maxInFlight", defaultValue = "1")
+    protected int maxInFlight = 1;
+
+    /**
+     * The maximum number of simple inserts and updates of the same partition grouped into an unlogged batch. The
+     * partition keys are taken from the schema of the node, and a batch is kept below its
+     * {@code batch_size_warn_threshold}. Conditional updates, counter updates and any other statement are executed on
+     * their own, after the batches pending. The default of {@code 1} disables batching.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.batchSize", defaultValue = "1")
+    protected int batchSize = 1;
+
+    /**
+     * The number of statement shapes kept prepared. Inserts, updates and deletes that only differ in their literals
+     * share a shape, which is prepared once and executed with the literals bound to it, sparing the node from parsing
+     * every statement. The number of statements executed from the cache is logged per shape. The default of {@code 0}
+     * executes the statements as they are.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.preparedStatementCacheSize", defaultValue = "0")
+    protected int preparedStatementCacheSize;
+
+    /**
+     * The number of rows fetched per page by the statements that return rows. The rows are handled a page at a time,
+     * so this bounds the memory a large result takes. The default of {@code 0} uses the page size of the driver.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.fetchSize", defaultValue = "0")
+    protected int fetchSize;
+
     protected String readFile(File file) throws MojoExecutionException {
         if (!file.isFile() || !file.exists()) {
             throw new MojoExecutionException("script " + file + " does not exist.");
@@ -69,22 +111,97 @@ public abstract class AbstractCqlExecMojo extends AbstractCassandraMojo {
         }
     }
 
-    protected List<Row> executeCql(final String statements) throws MojoExecutionException {
-        final List<Row> results = new ArrayList<>();
-        if (StringUtils.isBlank(statements)) {
+    /**
+     * Executes the statements of a script as they are read, so that the script is never held in memory as a whole.
+     * The rows the statements return are discarded.
+     *
+     * @param file the script.
+     * @throws MojoExecutionException if the script could not be read or executed.
+     */
+    protected void executeCqlScript(File file) throws MojoExecutionException {
+        if (!file.isFile() || !file.exists()) {
+            throw new MojoExecutionException("script " + file + " does not exist.");
+        }
+        CqlScriptOperation cqlScriptOperation = new CqlScriptOperation(file);
+        cqlScriptOperation.setMavenSession(session);
+        try {
+            // a USE statement switches the keyspace of the whole session
+            cqlScriptOperation.setExclusive(issuesUse(file));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not parse or load cql file", e);
+        }
+        try {
+            Utils.executeCql(cqlScriptOperation);
+        } catch (DriverExecutionException e) {
+            throw new MojoExecutionException(e.getCause().getMessage(), e);
+        }
+        if (cqlScriptOperation.readFailure != null) {
+            throw new MojoExecutionException("Could not parse or load cql file", cqlScriptOperation.readFailure);
+        }
+        if (cqlScriptOperation.count == 0) {
             getLog().warn("No CQL provided. Nothing to do.");
         } else {
-            try {
-                CqlExecOperation cqlExecOperation = new CqlExecOperation(statements);
-                Utils.executeCql(cqlExecOperation);
-                results.addAll(cqlExecOperation.results);
-            } catch (DriverExecutionException e) {
-                throw new MojoExecutionException(e.getCause().getMessage(), e);
+            getLog().debug("Executed " + cqlScriptOperation.count + " cql statement(s)");
+        }
+    }
+
+    /**
+     * Returns {@code true} if a script has a {@code USE} statement, reading it statement by statement.
+     *
+     * @param file the script.
+     * @return {@code true} if the script switches the keyspace of its session.
+     * @throws IOException if the script could not be read.
+     */
+    private boolean issuesUse(File file) throws IOException {
+        try (CqlScriptReader reader =
+                new CqlScriptReader(new InputStreamReader(new FileInputStream(file), cqlEncoding))) {
+            for (String statement = reader.nextStatement(); statement != null; statement = reader.nextStatement()) {
+                if (CqlPipeline.isUse(statement)) {
+                    return true;
+                }
             }
         }
+        return false;
+    }
+
+    protected List<Row> executeCql(final String statements) throws MojoExecutionException {
+        final List<Row> results = new ArrayList<>();
+        CqlExecOperation cqlExecOperation = executeStatements(statements, null);
+        if (cqlExecOperation != null) {
+            results.addAll(cqlExecOperation.results);
+        }
         return results;
     }
 
+    /**
+     * Executes statements, handing the rows they return to a sink a page at a time rather than collecting them.
+     *
+     * @param statements the statements.
+     * @param sink       the sink of the rows.
+     * @throws MojoExecutionException if the statements could not be executed or their rows written.
+     */
+    void executeCql(final String statements, CqlRowSink sink) throws MojoExecutionException {
+        CqlExecOperation cqlExecOperation = executeStatements(statements, sink);
+        if (cqlExecOperation != null && cqlExecOperation.writeFailure != null) {
+            throw new MojoExecutionException("Could not write the results", cqlExecOperation.writeFailure);
+        }
+    }
+
+    private CqlExecOperation executeStatements(final String statements, CqlRowSink sink) throws MojoExecutionException {
+        if (StringUtils.isBlank(statements)) {
+            getLog().warn("No CQL provided. Nothing to do.");
+            return null;
+        }
+        try {
+            CqlExecOperation cqlExecOperation = new CqlExecOperation(statements, sink);
+            cqlExecOperation.setMavenSession(session);
+            Utils.executeCql(cqlExecOperation);
+            return cqlExecOperation;
+        } catch (DriverExecutionException e) {
+            throw new MojoExecutionException(e.getCause().getMessage(), e);
+        }
+    }
+
     /**
      * Best effort to somewhat parse the cql input instead of just splitting on ; which
      * breaks badly if you have ; in strings or comments.
@@ -120,19 +237,65 @@ public abstract class AbstractCqlExecMojo extends AbstractCassandraMojo {
         return statementList;
     }
 
+    private class CqlScriptOperation extends CqlOperation {
+
+        private final File file;
+        private int count;
+        private IOException readFailure;
+
+        private CqlScriptOperation(File file) {
+            super(rpcAddress, nativeTransportPort);
+            this.file = file;
+            if (StringUtils.isNotBlank(keyspace)) {
+                getLog().info("setting keyspace: " + keyspace);
+                setKeyspace(keyspace);
+            }
+            setCqlVersion(cqlVersion);
+        }
+
+        @Override
+        void executeOperation(CqlSession cqlSession) throws CqlExecutionException {
+            try (CqlScriptReader reader =
+                    new CqlScriptReader(new InputStreamReader(new FileInputStream(file), cqlEncoding))) {
+                CqlShapes shapes = preparedStatementCacheSize > 0
+                        ? new CqlShapes(cqlSession, preparedStatementCacheSize, getLog())
+                        : null;
+                CqlPipeline pipeline =
+                        new CqlPipeline(cqlSession, maxInFlight, getStatementKeyspace(cqlSession), shapes, getLog());
+                CqlBatcher batcher = new CqlBatcher(cqlSession, pipeline, batchSize, getLog());
+                for (String statement = reader.nextStatement(); statement != null; statement = reader.nextStatement()) {
+                    batcher.execute(statement);
+                    count++;
+                }
+                batcher.flush();
+                pipeline.drain();
+                if (shapes != null) {
+                    shapes.report();
+                }
+            } catch (IOException e) {
+                readFailure = e;
+            }
+        }
+    }
+
     private class CqlExecOperation extends CqlOperation {
 
         private final List<Row> results = new ArrayList<>();
         private final List<String> statements;
+        private final CqlRowSink sink;
+        private IOException writeFailure;
 
-        private CqlExecOperation(String statements) {
+        private CqlExecOperation(String statements, CqlRowSink sink) {
             super(rpcAddress, nativeTransportPort);
+            this.sink = sink;
             if (useCqlLexer) {
                 getLog().warn("Using CqlLexer has not been extensively tested");
                 this.statements = splitStatementsUsingCqlLexer(statements);
             } else {
                 this.statements = Arrays.asList(statements.split(";"));
             }
+            // a USE statement switches the keyspace of the whole session
+            setExclusive(this.statements.stream().anyMatch(CqlPipeline::isUse));
             if (StringUtils.isNotBlank(keyspace)) {
                 getLog().info("setting keyspace: " + keyspace);
                 setKeyspace(keyspace);
@@ -143,20 +306,41 @@ public abstract class AbstractCqlExecMojo extends AbstractCassandraMojo {
 
         @Override
         void executeOperation(CqlSession cqlSession) throws CqlExecutionException {
+            CqlShapes shapes = preparedStatementCacheSize > 0
+                    ? new CqlShapes(cqlSession, preparedStatementCacheSize, getLog())
+                    : null;
+            CqlPipeline pipeline =
+                    new CqlPipeline(cqlSession, maxInFlight, getStatementKeyspace(cqlSession), shapes, getLog());
+            pipeline.setPageSize(fetchSize);
+            CqlBatcher batcher = new CqlBatcher(cqlSession, pipeline, batchSize, getLog());
             for (String statement : statements) {
                 if (StringUtils.isNotBlank(statement)) {
-                    if (getLog().isDebugEnabled()) {
-                        getLog().debug("Executing cql statement: " + statement);
+                    ResultSet resultSet = batcher.execute(statement);
+                    if (resultSet == null) {
+                        continue;
                     }
-                    try {
-                        ResultSet resultSet = cqlSession.execute(statement);
+                    if (sink == null) {
                         results.addAll(resultSet.all());
-                    } catch (Exception e) {
+                        continue;
+                    }
+                    try {
+                        sink.accept(resultSet);
+                    } catch (IOException e) {
+                        // the statements sent already are still completed, and their failures reported
+                        writeFailure = e;
+                        break;
+                    } catch (RuntimeException e) {
+                        // fetching a page failed
                         getLog().debug(statement);
                         throw new CqlExecutionException(e);
                     }
                 }
             }
+            batcher.flush();
+            pipeline.drain();
+            if (shapes != null) {
+                shapes.report();
+            }
         }
     }
 }
@@ -29,7 +29,7 @@ public abstract class AbstractCqlLoadMojo extends AbstractCqlExecMojo {
         if (script != null) {
             getLog().info("Running " + script + "...");
             try {
-                executeCql(readFile(script));
+                executeCqlScript(script);
                 getLog().info("Finished " + script + ".");
             } catch (MojoExecutionException e) {
                 if (loadFailureIgnore) {
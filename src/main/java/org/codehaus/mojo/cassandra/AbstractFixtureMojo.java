@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.io.File;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Abstract parent class for mojos that capture or restore a fixture: the SSTables of a set of keyspaces together with
+ * their schema, kept in {@code fixtureDirectory/fixture/keyspace/table} and {@code fixtureDirectory/fixture/keyspace/}
+ * {@value #SCHEMA_FILE}.
+ */
+public abstract class AbstractFixtureMojo extends AbstractCqlExecMojo {
+    /**
+     * The file holding the schema of a keyspace of the fixture, a CQL script of the statements that create the keyspace
+     * and its types, tables and indexes, as {@code DESCRIBE KEYSPACE} gives them.
+     */
+    protected static final String SCHEMA_FILE = "schema.cql";
+
+    /**
+     * The name of the fixture.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.fixture", required = true)
+    protected String fixture;
+
+    /**
+     * The directory holding the fixtures, one sub-directory per fixture. It should be on the same file system as
+     * {@code cassandraDir} so that the SSTables can be hard linked rather than copied.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(
+            property = "cassandra.fixtureDirectory",
+            defaultValue = "${user.home}/.m2/cassandra-fixtures/${project.groupId}/${project.artifactId}")
+    protected File fixtureDirectory;
+
+    /**
+     * Returns the directory of the fixture.
+     *
+     * @return the directory of the fixture.
+     */
+    protected File getFixtureDir() {
+        return new File(fixtureDirectory, fixture);
+    }
+
+    /**
+     * Quotes a keyspace or table name for use in CQL.
+     *
+     * @param name the name.
+     * @return the quoted name.
+     */
+    protected static String quote(String name) {
+        return CqlIdentifier.fromInternal(name).asCql(true);
+    }
+}
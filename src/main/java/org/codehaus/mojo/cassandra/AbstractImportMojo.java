@@ -0,0 +1,448 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import com.datastax.oss.driver.api.core.type.reflect.GenericType;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Abstract parent class for mojos that import the rows of a CSV or JSON Lines file into a table. The rows are parsed
+ * by a pool of threads against the columns of the table and handed to a {@link RowWriter}, serialized for an insert
+ * statement.
+ */
+public abstract class AbstractImportMojo extends AbstractCassandraMojo {
+    private static final int CHUNK_SIZE = 500;
+
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * The file to import.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.import.file", required = true)
+    protected File file;
+
+    /**
+     * The table to import into, as {@code keyspace.table} or as the name of a table of the {@code keyspace}.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.import.table", required = true)
+    protected String table;
+
+    /**
+     * The format of the file: {@code CSV} for comma separated values as of RFC 4180, in which an empty field that is
+     * not quoted is null, or {@code JSONL} for a JSON object per line, keyed by column name. By default it is
+     * {@code JSONL} for files ending in {@code .jsonl}, {@code .ndjson} or {@code .json}, {@code CSV} otherwise.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.import.format")
+    protected String format;
+
+    /**
+     * The comma separated columns the fields of a CSV file go to. By default they are taken from the header line if
+     * there is one, or else they are all the columns of the table in the order {@code SELECT *} gives them.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.import.columns")
+    protected String columns;
+
+    /**
+     * Whether the first line of a CSV file names the columns of its fields.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.import.header", defaultValue = "true")
+    protected boolean header = true;
+
+    /**
+     * The encoding of the file.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.import.encoding", defaultValue = "UTF-8")
+    protected String encoding = "UTF-8";
+
+    /**
+     * The number of threads parsing the rows. The default of {@code 0} uses one per available processor.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.import.threads", defaultValue = "0")
+    protected int threads;
+
+    /**
+     * Writes the rows of the file. It is called by several threads at once.
+     */
+    interface RowWriter {
+        /**
+         * Writes a row.
+         *
+         * @param values the values of the row, serialized for the {@link ImportFile#getInsert() insert} of the file,
+         *               {@code null} for the ones to leave unset.
+         * @param line   the line of the file the row starts on.
+         * @throws Exception if the row could not be written.
+         */
+        void write(ByteBuffer[] values, long line) throws Exception;
+    }
+
+    /**
+     * Checks the file and table parameters.
+     *
+     * @return {@code true} if the file holds JSON Lines, {@code false} if it holds comma separated values.
+     * @throws MojoExecutionException if a parameter is missing or invalid.
+     */
+    protected boolean checkImportParameters() throws MojoExecutionException {
+        if (file == null || !file.isFile()) {
+            throw new MojoExecutionException("Import file " + file + " does not exist.");
+        }
+        if (StringUtils.isBlank(table)) {
+            throw new MojoExecutionException("Please specify the table to import into");
+        }
+        if (StringUtils.isBlank(format)) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            return name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json");
+        }
+        if ("jsonl".equalsIgnoreCase(format.trim())) {
+            return true;
+        }
+        if ("csv".equalsIgnoreCase(format.trim())) {
+            return false;
+        }
+        throw new MojoExecutionException("Unknown import format: " + format + ", use CSV or JSONL");
+    }
+
+    /**
+     * Returns the metadata of the table to import into.
+     *
+     * @param cqlSession the session.
+     * @return the metadata of the table.
+     * @throws CqlExecutionException if the table does not exist.
+     */
+    protected TableMetadata findTable(CqlSession cqlSession) throws CqlExecutionException {
+        String keyspaceName = keyspace;
+        String tableName = table.trim();
+        int dot = tableName.indexOf('.');
+        if (dot > 0) {
+            keyspaceName = tableName.substring(0, dot);
+            tableName = tableName.substring(dot + 1);
+        }
+        if (StringUtils.isBlank(keyspaceName)) {
+            throw new CqlExecutionException("No keyspace given for table " + table);
+        }
+        CqlIdentifier tableId = CqlIdentifier.fromCql(tableName);
+        return cqlSession
+                .getMetadata()
+                .getKeyspace(CqlIdentifier.fromCql(keyspaceName))
+                .flatMap(metadata -> metadata.getTable(tableId))
+                .orElseThrow(() -> new CqlExecutionException("Table " + table + " does not exist"));
+    }
+
+    /**
+     * Parses a field of a CSV file: a string as it is, any other value as a CQL literal, or else quoted as one, which
+     * dates, times, timestamps and addresses need.
+     *
+     * @param codec the codec of the column.
+     * @param field the field.
+     * @return the value.
+     */
+    static Object parse(TypeCodec<Object> codec, String field) {
+        if (codec.getJavaType().equals(GenericType.STRING)) {
+            return field;
+        }
+        try {
+            return codec.parse(field);
+        } catch (IllegalArgumentException e) {
+            if (field.startsWith("'")) {
+                throw e;
+            }
+            return codec.parse("'" + field.replace("'", "''") + "'");
+        }
+    }
+
+    static String describe(TableMetadata tableMetadata) {
+        return tableMetadata.getKeyspace().asCql(true) + "."
+                + tableMetadata.getName().asCql(true);
+    }
+
+    static long rate(long rows, long nanos) {
+        return rows * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+    }
+
+    /**
+     * The file to import, open for reading. For comma separated values the columns are known once the header line is
+     * read, so it is the file that gives the insert its rows are serialized for.
+     */
+    final class ImportFile implements Closeable {
+        private final TableMetadata tableMetadata;
+
+        private final ProtocolVersion protocolVersion;
+
+        private final InputStreamReader in;
+
+        private final CsvReader csv;
+
+        private final BufferedReader lines;
+
+        private final List<TypeCodec<Object>> codecs = new ArrayList<>();
+
+        private final String insert;
+
+        private long lineNumber;
+
+        private final AtomicLong rows = new AtomicLong();
+
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+        /**
+         * Opens the file, reading the header line of comma separated values.
+         *
+         * @param tableMetadata   the table to import into.
+         * @param jsonLines       whether the file holds JSON Lines.
+         * @param codecs          the codecs to parse the fields of comma separated values with.
+         * @param protocolVersion the protocol version to serialize the values with.
+         * @throws IOException if the file could not be read or names a column the table does not have.
+         */
+        ImportFile(
+                TableMetadata tableMetadata, boolean jsonLines, CodecRegistry codecs, ProtocolVersion protocolVersion)
+                throws IOException {
+            this.tableMetadata = tableMetadata;
+            this.protocolVersion = protocolVersion;
+            this.in = new InputStreamReader(new FileInputStream(file), encoding);
+            try {
+                if (jsonLines) {
+                    csv = null;
+                    lines = new BufferedReader(in);
+                    // the node maps the keys of the objects to the columns and parses their values
+                    insert = "INSERT INTO " + describe(tableMetadata) + " JSON ? DEFAULT UNSET";
+                } else {
+                    csv = new CsvReader(in);
+                    lines = null;
+                    insert = csvInsert(codecs);
+                }
+            } catch (IOException | RuntimeException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Returns the insert statement the rows are serialized for.
+         *
+         * @return the insert statement, with a bind marker per value.
+         */
+        String getInsert() {
+            return insert;
+        }
+
+        /**
+         * Reads the rows of the file and has them written by a pool of threads, the reading thread parsing them too
+         * once the pool falls behind. The rows read are logged every few seconds.
+         *
+         * @param writer the writer of the rows.
+         * @return the number of rows written.
+         * @throws IOException if the file could not be read, or a row could not be parsed or written.
+         */
+        long copyTo(RowWriter writer) throws IOException {
+            int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    poolSize,
+                    poolSize,
+                    0L,
+                    TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(poolSize * 2),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            long start = System.nanoTime();
+            long last = start;
+            try {
+                List<Object> chunk = new ArrayList<>(CHUNK_SIZE);
+                long[] chunkLines = new long[CHUNK_SIZE];
+                for (Object record = next(chunkLines, chunk.size());
+                        record != null && failure.get() == null;
+                        record = next(chunkLines, chunk.size())) {
+                    chunk.add(record);
+                    if (chunk.size() == CHUNK_SIZE) {
+                        pool.execute(chunk(writer, chunk, chunkLines));
+                        chunk = new ArrayList<>(CHUNK_SIZE);
+                        chunkLines = new long[CHUNK_SIZE];
+                        long now = System.nanoTime();
+                        if (now - last >= PROGRESS_INTERVAL) {
+                            last = now;
+                            getLog().info("Read " + rows.get() + " row(s) (" + rate(rows.get(), now - start)
+                                    + " rows/s)");
+                        }
+                    }
+                }
+                if (!chunk.isEmpty() && failure.get() == null) {
+                    pool.execute(chunk(writer, chunk, chunkLines));
+                }
+            } catch (IOException | RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                pool.shutdown();
+                try {
+                    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure.compareAndSet(null, e);
+                }
+            }
+            Exception e = failure.get();
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            if (e != null) {
+                throw new IOException(e.getLocalizedMessage(), e);
+            }
+            return rows.get();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private String csvInsert(CodecRegistry codecRegistry) throws IOException {
+            List<String> names = null;
+            if (StringUtils.isNotBlank(columns)) {
+                names = new ArrayList<>(Arrays.asList(StringUtils.stripAll(columns.split(","))));
+            }
+            if (header) {
+                List<String> headerLine = csv.nextRecord();
+                if (names == null && headerLine != null) {
+                    names = headerLine;
+                }
+            }
+            if (names == null) {
+                names = new ArrayList<>();
+                for (CqlIdentifier column : tableMetadata.getColumns().keySet()) {
+                    names.add(column.asInternal());
+                }
+            }
+            StringBuilder cql = new StringBuilder("INSERT INTO " + describe(tableMetadata) + " (");
+            for (String name : names) {
+                Optional<ColumnMetadata> column =
+                        name == null ? Optional.empty() : tableMetadata.getColumn(CqlIdentifier.fromInternal(name));
+                if (!column.isPresent()) {
+                    throw new IOException("Unknown column " + name + " of " + describe(tableMetadata));
+                }
+                cql.append(codecs.isEmpty() ? "" : ", ")
+                        .append(column.get().getName().asCql(true));
+                codecs.add(codecRegistry.codecFor(column.get().getType()));
+            }
+            return cql.append(") VALUES (")
+                    .append(StringUtils.repeat("?, ", codecs.size() - 1))
+                    .append("?)")
+                    .toString();
+        }
+
+        /**
+         * Reads the next record of comma separated values or the next JSON object, noting the line it starts on.
+         */
+        private Object next(long[] chunkLines, int index) throws IOException {
+            if (csv != null) {
+                List<String> record = csv.nextRecord();
+                chunkLines[index] = csv.getRecordLine();
+                return record;
+            }
+            for (String json = lines.readLine(); json != null; json = lines.readLine()) {
+                lineNumber++;
+                if (StringUtils.isNotBlank(json)) {
+                    chunkLines[index] = lineNumber;
+                    return json;
+                }
+            }
+            return null;
+        }
+
+        private Runnable chunk(RowWriter writer, List<Object> chunk, long[] chunkLines) {
+            return () -> {
+                for (int r = 0; r < chunk.size() && failure.get() == null; r++) {
+                    long line = chunkLines[r];
+                    ByteBuffer[] values;
+                    try {
+                        values = serialize(chunk.get(r));
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(
+                                null, new IllegalArgumentException("line " + line + ": " + e.getLocalizedMessage(), e));
+                        return;
+                    }
+                    try {
+                        writer.write(values, line);
+                        rows.incrementAndGet();
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        private ByteBuffer[] serialize(Object record) {
+            if (record instanceof String) {
+                return new ByteBuffer[] {ByteBuffer.wrap(((String) record).getBytes(StandardCharsets.UTF_8))};
+            }
+            List<String> fields = (List<String>) record;
+            if (fields.size() != codecs.size()) {
+                throw new IllegalArgumentException(
+                        "expected " + codecs.size() + " field(s) but found " + fields.size());
+            }
+            ByteBuffer[] values = new ByteBuffer[fields.size()];
+            for (int i = 0; i < values.length; i++) {
+                // null fields are left unset rather than written as tombstones
+                if (fields.get(i) != null) {
+                    TypeCodec<Object> codec = codecs.get(i);
+                    values[i] = codec.encode(parse(codec, fields.get(i)), protocolVersion);
+                }
+            }
+            return values;
+        }
+    }
+}
@@ -27,6 +27,8 @@ public abstract class AbstractSchemaCassandraMojo extends AbstractCassandraMojo
         } catch (IllegalArgumentException iae) {
             throw new MojoExecutionException(iae.getMessage());
         }
-        Utils.executeCql(buildOperation());
+        CqlOperation operation = buildOperation();
+        operation.setMavenSession(session);
+        Utils.executeCql(operation);
     }
 }
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Waits for the Cassandra instances the {@code start} goal launched with {@code async} to finish starting, and loads
+ * the script into them, with the configuration of the {@code start} execution that launched them.
+ */
+@Mojo(name = "await", threadSafe = true, defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST)
+public class AwaitCassandraMojo extends AbstractMojo {
+    /**
+     * The key of the pending starts of the module in the plugin context.
+     */
+    private static final String PENDING_STARTS = AwaitCassandraMojo.class.getName() + ".pendingStarts";
+
+    /**
+     * Skip the execution.
+     *
+     */
+    @Parameter(property = "cassandra.skip", defaultValue = "false")
+    private boolean skip;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        List<PendingStart> pendingStarts = getPendingStarts(getPluginContext());
+        if (pendingStarts.isEmpty()) {
+            getLog().info("No Cassandra instance is starting in the background");
+            return;
+        }
+        try {
+            for (PendingStart pendingStart : pendingStarts) {
+                pendingStart.await();
+            }
+        } finally {
+            pendingStarts.clear();
+        }
+    }
+
+    /**
+     * Returns the starts of the module that have not been awaited yet.
+     *
+     * @param pluginContext the plugin context of the module.
+     * @return the pending starts, to be added to.
+     */
+    @SuppressWarnings("unchecked")
+    static List<PendingStart> getPendingStarts(Map pluginContext) {
+        List<PendingStart> result = (List<PendingStart>) pluginContext.get(PENDING_STARTS);
+        if (result == null) {
+            result = new ArrayList<>();
+            pluginContext.put(PENDING_STARTS, result);
+        }
+        return result;
+    }
+
+    /**
+     * The remainder of a start that was launched in the background.
+     */
+    interface PendingStart {
+        void await() throws MojoExecutionException, MojoFailureException;
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import javax.management.JMException;
+import javax.management.remote.JMXConnector;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import com.datastax.oss.driver.api.core.type.UserDefinedType;
+import org.apache.cassandra.io.sstable.CQLSSTableWriter;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Imports the rows of a CSV or JSON Lines file into a table by writing SSTables offline and having the node import
+ * them, so that no row goes through the coordinator, the commit log or the memtables. Each of the threads parsing the
+ * rows writes its own SSTables, which are imported together once all the rows have been written. The table's schema
+ * is read from the node, the table being created first if it does not exist and {@code createTable} is given. The
+ * node must be able to read the {@code cassandraDir} the SSTables are staged in. As the SSTables are written inside
+ * the Maven JVM, on Java 11 or newer {@code MAVEN_OPTS} must contain the {@code --add-exports} and {@code --add-opens}
+ * options Cassandra needs, as for the {@code embedded} parameter of the {@code start} goal.
+ */
+@Mojo(name = "bulk-import", threadSafe = true, defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST)
+public class BulkImportCassandraMojo extends AbstractImportMojo {
+    /**
+     * Schema changes are not bound by the driver's default request timeout.
+     */
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    /**
+     * The {@code CREATE TABLE} statement of the table, executed if the table does not exist yet.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.import.createTable")
+    protected String createTable;
+
+    /**
+     * The size in mebibytes of the SSTables each thread writes. A thread buffers its rows in memory up to that size,
+     * before sorting them and writing them out as an SSTable.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.import.maxSSTableSize", defaultValue = "32")
+    protected int maxSSTableSize = 32;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        boolean jsonLines = checkImportParameters();
+        File staging = new File(cassandraDir, "bulk-import");
+        try {
+            FileUtils.deleteDirectory(staging);
+            WriteOperation operation = new WriteOperation(jsonLines, staging);
+            operation.setMavenSession(session);
+            Utils.executeCql(operation);
+            if (operation.failure != null) {
+                throw new MojoExecutionException(
+                        "Could not import " + file + ": " + operation.failure.getMessage(), operation.failure);
+            }
+            if (operation.directories.isEmpty()) {
+                getLog().info("No rows to import from " + file);
+                return;
+            }
+            long timeStamp = System.currentTimeMillis();
+            try (JMXConnector connector = Utils.connectJmx(rpcAddress, jmxPort)) {
+                Utils.importSSTables(
+                        connector.getMBeanServerConnection(),
+                        operation.tableMetadata.getKeyspace().asInternal(),
+                        operation.tableMetadata.getName().asInternal(),
+                        operation.directories);
+            }
+            getLog().info("Imported the SSTables of " + operation.writers.size() + " writer(s) into "
+                    + describe(operation.tableMetadata) + " in " + (System.currentTimeMillis() - timeStamp) + "ms");
+        } catch (IOException | JMException e) {
+            throw new MojoExecutionException("Could not import " + file + ": " + e.getLocalizedMessage(), e);
+        } finally {
+            try {
+                FileUtils.deleteDirectory(staging);
+            } catch (IOException e) {
+                getLog().warn("Could not delete " + staging + ": " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    private class WriteOperation extends CqlOperation {
+        private final boolean jsonLines;
+
+        private final File staging;
+
+        private final List<CQLSSTableWriter> writers = new ArrayList<>();
+
+        private final Set<String> directories = new HashSet<>();
+
+        private TableMetadata tableMetadata;
+
+        private Exception failure;
+
+        private WriteOperation(boolean jsonLines, File staging) {
+            super(rpcAddress, nativeTransportPort);
+            this.jsonLines = jsonLines;
+            this.staging = staging;
+        }
+
+        @Override
+        void executeOperation(CqlSession cqlSession) throws CqlExecutionException {
+            try {
+                // the writers flush through the file utilities of Cassandra, which need the internals of the JDK
+                Class.forName(org.apache.cassandra.io.util.FileUtils.class.getName());
+            } catch (ClassNotFoundException | LinkageError e) {
+                failure = new IOException(
+                        "Could not load the SSTable writer, on Java 11 or newer MAVEN_OPTS must contain the"
+                                + " --add-exports and --add-opens options Cassandra needs: " + e,
+                        e);
+                return;
+            }
+            tableMetadata = findOrCreateTable(cqlSession);
+            List<String> types = new ArrayList<>();
+            cqlSession.getMetadata().getKeyspace(tableMetadata.getKeyspace()).ifPresent(keyspaceMetadata -> {
+                for (UserDefinedType type :
+                        keyspaceMetadata.getUserDefinedTypes().values()) {
+                    types.add(type.describe(false));
+                }
+            });
+            String partitioner = cqlSession
+                    .getMetadata()
+                    .getTokenMap()
+                    .map(TokenMap::getPartitionerName)
+                    .orElse("org.apache.cassandra.dht.Murmur3Partitioner");
+            long start = System.nanoTime();
+            long rows;
+            try (ImportFile importFile = new ImportFile(
+                    tableMetadata,
+                    jsonLines,
+                    cqlSession.getContext().getCodecRegistry(),
+                    cqlSession.getContext().getProtocolVersion())) {
+                AtomicInteger writerCount = new AtomicInteger();
+                ThreadLocal<CQLSSTableWriter> writer = ThreadLocal.withInitial(() -> newWriter(
+                        new File(staging, "writer-" + writerCount.incrementAndGet()),
+                        importFile.getInsert(),
+                        types,
+                        partitioner));
+                try {
+                    rows = importFile.copyTo((values, line) -> writer.get().rawAddRow(unset(values)));
+                } finally {
+                    writer.remove();
+                    closeWriters();
+                }
+            } catch (IOException | RuntimeException e) {
+                // an unreadable file, an unknown column, a row that does not parse or a writer that failed
+                failure = e;
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            getLog().info("Wrote " + rows + " row(s) of " + describe(tableMetadata) + " as the SSTables of "
+                    + writers.size() + " writer(s) in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms ("
+                    + rate(rows, elapsed) + " rows/s)");
+        }
+
+        private TableMetadata findOrCreateTable(CqlSession cqlSession) throws CqlExecutionException {
+            try {
+                return findTable(cqlSession);
+            } catch (CqlExecutionException e) {
+                if (StringUtils.isBlank(createTable)) {
+                    throw e;
+                }
+            }
+            getLog().debug("Executing cql statement: " + createTable);
+            try {
+                cqlSession.execute(SimpleStatement.newInstance(createTable).setTimeout(TIMEOUT));
+            } catch (Exception e) {
+                throw new CqlExecutionException(e);
+            }
+            return findTable(cqlSession);
+        }
+
+        private CQLSSTableWriter newWriter(File directory, String insert, List<String> types, String partitioner) {
+            // the SSTables name their keyspace and table after the directories they are in
+            File tableDirectory = new File(
+                    new File(directory, tableMetadata.getKeyspace().asInternal()),
+                    tableMetadata.getName().asInternal());
+            if (!tableDirectory.mkdirs()) {
+                throw new IllegalStateException("Could not create " + tableDirectory);
+            }
+            CQLSSTableWriter.Builder builder = CQLSSTableWriter.builder()
+                    .inDirectory(tableDirectory.getAbsolutePath())
+                    .forTable(tableMetadata.describe(false))
+                    .using(insert)
+                    .withPartitioner(FBUtilities.newPartitioner(partitioner))
+                    .withMaxSSTableSizeInMiB(maxSSTableSize);
+            for (String type : types) {
+                builder.withType(type);
+            }
+            CQLSSTableWriter writer;
+            // building a writer loads the table into the schema of this JVM
+            synchronized (CQLSSTableWriter.class) {
+                writer = builder.build();
+            }
+            synchronized (writers) {
+                writers.add(writer);
+                directories.add(tableDirectory.getAbsolutePath());
+            }
+            return writer;
+        }
+
+        private void closeWriters() throws IOException {
+            IOException closeFailure = null;
+            synchronized (writers) {
+                for (CQLSSTableWriter writer : writers) {
+                    try {
+                        writer.close();
+                    } catch (IOException e) {
+                        closeFailure = e;
+                    }
+                }
+            }
+            if (closeFailure != null) {
+                throw closeFailure;
+            }
+        }
+    }
+
+    /**
+     * Replaces the values left unset by the marker the writer takes for them.
+     */
+    private static List<ByteBuffer> unset(ByteBuffer[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                values[i] = CQLSSTableWriter.UNSET_VALUE;
+            }
+        }
+        return Arrays.asList(values);
+    }
+}
@@ -21,9 +21,13 @@ package org.codehaus.mojo.cassandra;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.cassandra.service.CassandraDaemon;
 
@@ -39,8 +43,33 @@ public class CassandraMonitor extends Thread {
 
     public static final String KEY_PROPERTY_NAME = "STOP.KEY";
 
+    /**
+     * The system property holding the fingerprint of the configuration Cassandra was launched with, which the
+     * {@code fingerprint} operation replies.
+     */
+    public static final String FINGERPRINT_PROPERTY_NAME = "STOP.FINGERPRINT";
+
+    /**
+     * The reply sent to the {@code status} and {@code await} operations once Cassandra has started.
+     */
+    public static final String STARTED = "started";
+
+    /**
+     * The reply sent to the {@code status} operation while Cassandra is still starting.
+     */
+    public static final String STARTING = "starting";
+
+    /**
+     * When the JVM got round to running the plugin's code, i.e. the end of the JVM's own startup.
+     */
+    private static final long MAIN_MILLIS = System.currentTimeMillis();
+
     private final String key;
 
+    private volatile long startedMillis = -1;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
     private ServerSocket serverSocket;
 
     /**
@@ -88,6 +117,20 @@ public class CassandraMonitor extends Thread {
                         serverSocket = null;
                         System.out.println("Killing Cassandra");
                         System.exit(0);
+                    } else if ("status".equals(cmd)) {
+                        reply(socket, started.getCount() == 0 ? STARTED : STARTING);
+                    } else if ("timings".equals(cmd)) {
+                        // when the JVM started, when it ran main() and when Cassandra had started, -1 if not yet
+                        reply(
+                                socket,
+                                ManagementFactory.getRuntimeMXBean().getStartTime() + " " + MAIN_MILLIS + " "
+                                        + startedMillis);
+                    } else if ("fingerprint".equals(cmd)) {
+                        reply(socket, System.getProperty(FINGERPRINT_PROPERTY_NAME, ""));
+                    } else if ("await".equals(cmd)) {
+                        // the reply is deferred until Cassandra has started, the socket now belongs to the waiter
+                        awaitStarted(socket);
+                        socket = null;
                     } else {
                         System.out.println("Unsupported monitor operation.");
                     }
@@ -107,6 +150,49 @@ public class CassandraMonitor extends Thread {
         }
     }
 
+    /**
+     * Signals everyone waiting on the {@code await} operation that Cassandra has started.
+     */
+    public void markStarted() {
+        startedMillis = System.currentTimeMillis();
+        started.countDown();
+    }
+
+    /**
+     * Replies {@link #STARTED} on the supplied socket once Cassandra has started. If Cassandra fails to start the
+     * process exits and the waiter sees the socket close without a reply.
+     *
+     * @param socket the socket of the waiter.
+     */
+    private void awaitStarted(final Socket socket) {
+        Thread waiter = new Thread("CassandraMonitor-await") {
+            public void run() {
+                try {
+                    started.await();
+                    reply(socket, STARTED);
+                } catch (InterruptedException e) {
+                    // ignore
+                } catch (IOException e) {
+                    // the waiter has gone away
+                } finally {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+        };
+        waiter.setDaemon(true);
+        waiter.start();
+    }
+
+    private static void reply(Socket socket, String reply) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((reply + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
     /**
      * Starts the {@link CassandraMonitor} and then delegates to {@link CassandraDaemon}.
      *
@@ -117,12 +203,17 @@ public class CassandraMonitor extends Thread {
         String host = System.getProperty(HOST_PROPERTY_NAME, "127.0.0.1");
         String property = System.getProperty(PORT_PROPERTY_NAME);
         String key = System.getProperty(KEY_PROPERTY_NAME);
+        CassandraMonitor monitor = null;
         if (property != null && key != null) {
             int port = Integer.parseInt(property);
-            CassandraMonitor monitor = new CassandraMonitor(host, port, key);
+            monitor = new CassandraMonitor(host, port, key);
             monitor.setDaemon(true);
             monitor.start();
         }
+        // returns once the daemon has been activated, i.e. native transport is accepting clients
         CassandraDaemon.main(args);
+        if (monitor != null) {
+            monitor.markStarted();
+        }
     }
 }
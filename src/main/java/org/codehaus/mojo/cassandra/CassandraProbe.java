@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Finds out whether a node is down, starting or ready without building a driver session. The state is read from the
+ * {@code StorageService} MBean over a JMX connection that is kept open between probes; when the node has no JMX
+ * interface, or it cannot be reached, the native transport is asked for its {@code OPTIONS} instead.
+ */
+final class CassandraProbe implements Closeable {
+    /**
+     * The state of a node.
+     */
+    enum State {
+        /**
+         * Neither the JMX interface nor the native transport can be reached.
+         */
+        DOWN,
+        /**
+         * The node is up but does not serve CQL requests yet, or not any more.
+         */
+        STARTING,
+        /**
+         * The node is in normal mode, gossiping and serving CQL requests.
+         */
+        READY
+    }
+
+    private static final String[] ATTRIBUTES = {"OperationMode", "NativeTransportRunning", "GossipRunning"};
+
+    /**
+     * Protocol v4 {@code OPTIONS} request: version, flags, stream, opcode and an empty body.
+     */
+    private static final byte[] OPTIONS_FRAME = {0x04, 0x00, 0x00, 0x01, 0x05, 0x00, 0x00, 0x00, 0x00};
+
+    private static final int SUPPORTED = 0x06;
+
+    private static final int TIMEOUT_MILLIS = 1000;
+
+    private final String rpcAddress;
+
+    private final int nativeTransportPort;
+
+    private final int jmxPort;
+
+    private final Log log;
+
+    private JMXConnector connector;
+
+    private ObjectName storageService;
+
+    /**
+     * Creates a probe.
+     *
+     * @param rpcAddress          The address of the node.
+     * @param nativeTransportPort The native transport port of the node.
+     * @param jmxPort             The JMX port of the node, {@code 0} if it has no JMX interface.
+     * @param log                 The log to write to.
+     */
+    CassandraProbe(String rpcAddress, int nativeTransportPort, int jmxPort, Log log) {
+        this.rpcAddress = rpcAddress;
+        this.nativeTransportPort = nativeTransportPort;
+        this.jmxPort = jmxPort;
+        this.log = log;
+    }
+
+    /**
+     * Probes the node.
+     *
+     * @return the state of the node.
+     */
+    State probe() {
+        if (jmxPort > 0) {
+            try {
+                Map<String, Object> attributes = getStorageServiceAttributes();
+                log.debug("Cassandra state: " + attributes);
+                return "NORMAL".equals(attributes.get("OperationMode"))
+                                && Boolean.TRUE.equals(attributes.get("NativeTransportRunning"))
+                                && Boolean.TRUE.equals(attributes.get("GossipRunning"))
+                        ? State.READY
+                        : State.STARTING;
+            } catch (JMException e) {
+                // the MBean is not registered yet
+                log.debug(e.getLocalizedMessage(), e);
+                return State.STARTING;
+            } catch (IOException e) {
+                // not listening yet or gone, the connection is opened again on the next probe
+                log.debug(e.getLocalizedMessage(), e);
+                closeConnector();
+            }
+        }
+        return probeNativeTransport();
+    }
+
+    /**
+     * Returns the name of the cluster of the node.
+     *
+     * @return the name of the cluster, or {@code null} if it cannot be read over JMX.
+     */
+    String getClusterName() {
+        if (connector == null) {
+            return null;
+        }
+        try {
+            return (String) connector.getMBeanServerConnection().getAttribute(storageService, "ClusterName");
+        } catch (IOException | JMException e) {
+            log.debug(e.getLocalizedMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        closeConnector();
+    }
+
+    private Map<String, Object> getStorageServiceAttributes() throws IOException, JMException {
+        if (connector == null) {
+            connector = Utils.connectJmx(rpcAddress, jmxPort);
+            storageService = new ObjectName(Utils.STORAGE_SERVICE_MBEAN);
+        }
+        MBeanServerConnection connection = connector.getMBeanServerConnection();
+        Map<String, Object> result = new HashMap<>();
+        for (Attribute attribute :
+                connection.getAttributes(storageService, ATTRIBUTES).asList()) {
+            result.put(attribute.getName(), attribute.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Sends an {@code OPTIONS} request to the native transport, which answers {@code SUPPORTED} once it serves
+     * requests.
+     *
+     * @return the state of the native transport.
+     */
+    private State probeNativeTransport() {
+        try (Socket s = new Socket()) {
+            try {
+                s.connect(new InetSocketAddress(rpcAddress, nativeTransportPort), TIMEOUT_MILLIS);
+            } catch (IOException e) {
+                return State.DOWN;
+            }
+            s.setSoTimeout(TIMEOUT_MILLIS);
+            OutputStream out = s.getOutputStream();
+            out.write(OPTIONS_FRAME);
+            out.flush();
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            byte[] header = new byte[9];
+            in.readFully(header);
+            return (header[4] & 0xff) == SUPPORTED ? State.READY : State.STARTING;
+        } catch (IOException e) {
+            log.debug(e.getLocalizedMessage(), e);
+            return State.STARTING;
+        }
+    }
+
+    private void closeConnector() {
+        if (connector != null) {
+            try {
+                connector.close();
+            } catch (IOException e) {
+                log.debug(e.getLocalizedMessage(), e);
+            }
+            connector = null;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.data.ByteUtils;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Groups simple inserts and updates by table and partition key into unlogged batches ahead of a {@link CqlPipeline}.
+ * A statement that cannot be grouped first sends the batches pending, so that the statements keep their order.
+ * A batch is sent when it holds {@code batchSize} statements, or when the next statement would take the size of its
+ * statements past the node's {@code batch_size_warn_threshold}. As all the statements of a batch share a timestamp, a
+ * batch is also sent before a second statement writes the same row. The key values are compared once read by the
+ * codecs of their columns, so that {@code 1} and {@code 01}, or {@code 'a'} and {@code $$a$$}, are the same key; a
+ * statement whose key is not a literal, such as a function call, is not batched. The batches of at most 1024
+ * partitions are kept pending at a time.
+ */
+final class CqlBatcher {
+    /**
+     * The default {@code batch_size_warn_threshold} of Cassandra.
+     */
+    private static final int DEFAULT_THRESHOLD = 5 * 1024;
+
+    /**
+     * The number of partitions with a batch pending beyond which all the batches are sent, so that a script writing
+     * to many partitions is not held in memory.
+     */
+    private static final int MAX_PENDING_PARTITIONS = 1024;
+
+    private static final Pattern SIZE = Pattern.compile("(\\d+)\\s*([KM]i?B|B)?", Pattern.CASE_INSENSITIVE);
+
+    private final CqlSession cqlSession;
+
+    private final CqlPipeline pipeline;
+
+    private final int batchSize;
+
+    private final int maxBytes;
+
+    private final Log log;
+
+    private final Map<String, Batch> batches = new LinkedHashMap<>();
+
+    /**
+     * Creates a batcher.
+     *
+     * @param cqlSession the session, whose schema metadata gives the partition keys.
+     * @param pipeline   the pipeline to send the statements and batches to, which gives the keyspace of a table that
+     *                   is not qualified by one.
+     * @param batchSize  the maximum number of statements in a batch, {@code 1} or less disables batching.
+     * @param log        the log to write to.
+     */
+    CqlBatcher(CqlSession cqlSession, CqlPipeline pipeline, int batchSize, Log log) {
+        this.cqlSession = cqlSession;
+        this.pipeline = pipeline;
+        this.batchSize = batchSize;
+        this.log = log;
+        this.maxBytes = batchSize > 1 ? readThreshold(cqlSession) : 0;
+    }
+
+    /**
+     * Adds a statement to a batch, or sends it through the pipeline if it cannot be grouped.
+     *
+     * @param statement the statement.
+     * @return the result of the statement, or {@code null} if it was batched or sent asynchronously.
+     * @throws CqlExecutionException if the statement, or one sent before it, failed.
+     */
+    ResultSet execute(String statement) throws CqlExecutionException {
+        if (batchSize > 1) {
+            Write write = Write.parse(statement);
+            String[] keys = write == null ? null : resolveKeys(write);
+            if (keys != null) {
+                add(keys[0], keys[1], statement);
+                return null;
+            }
+            flush();
+        }
+        return pipeline.execute(statement);
+    }
+
+    /**
+     * Sends the batches pending.
+     *
+     * @throws CqlExecutionException if a batch, or a statement sent before it, failed.
+     */
+    void flush() throws CqlExecutionException {
+        for (Batch batch : batches.values()) {
+            send(batch);
+        }
+        batches.clear();
+    }
+
+    private void add(String partition, String row, String statement) throws CqlExecutionException {
+        int bytes = statement.getBytes(StandardCharsets.UTF_8).length;
+        Batch batch = batches.get(partition);
+        if (batch != null
+                && (batch.rows.contains(row)
+                        || batch.statements.size() >= batchSize
+                        || batch.bytes + bytes > maxBytes)) {
+            send(batch);
+        }
+        if (batch == null) {
+            if (batches.size() >= MAX_PENDING_PARTITIONS) {
+                flush();
+            }
+            batch = new Batch();
+            batches.put(partition, batch);
+        }
+        batch.statements.add(statement);
+        batch.rows.add(row);
+        batch.bytes += bytes;
+    }
+
+    private void send(Batch batch) throws CqlExecutionException {
+        if (batch.statements.isEmpty()) {
+            return;
+        }
+        if (batch.statements.size() == 1) {
+            pipeline.execute(batch.statements.get(0));
+        } else {
+            pipeline.executeBatch(new ArrayList<>(batch.statements));
+        }
+        batch.statements.clear();
+        batch.rows.clear();
+        batch.bytes = 0;
+    }
+
+    /**
+     * Returns the keys of the partition and the row a write goes to.
+     *
+     * @param write the write.
+     * @return the keys, or {@code null} if the write cannot be batched.
+     */
+    private String[] resolveKeys(Write write) {
+        CqlIdentifier keyspace = write.keyspace != null ? write.keyspace : pipeline.getKeyspace();
+        if (keyspace == null) {
+            return null;
+        }
+        Optional<TableMetadata> table =
+                cqlSession.getMetadata().getKeyspace(keyspace).flatMap(metadata -> metadata.getTable(write.table));
+        if (!table.isPresent()) {
+            return null;
+        }
+        for (ColumnMetadata column : table.get().getColumns().values()) {
+            if (DataTypes.COUNTER.equals(column.getType())) {
+                // counter updates cannot be mixed with other updates
+                return null;
+            }
+        }
+        StringBuilder partition =
+                new StringBuilder(keyspace.asInternal()).append('.').append(write.table.asInternal());
+        for (ColumnMetadata column : table.get().getPartitionKey()) {
+            String value = normalize(column, write.keys.get(column.getName()));
+            if (value == null) {
+                return null;
+            }
+            partition.append('\u0000').append(value);
+        }
+        StringBuilder row = new StringBuilder(partition);
+        for (ColumnMetadata column : table.get().getClusteringColumns().keySet()) {
+            String term = write.keys.get(column.getName());
+            // an update of the static columns leaves out the clustering columns
+            String value = term == null ? "" : normalize(column, term);
+            if (value == null) {
+                return null;
+            }
+            row.append('\u0000').append(value);
+        }
+        return new String[] {partition.toString(), row.toString()};
+    }
+
+    /**
+     * Returns the serialized form of the value a term gives to a column, so that the different ways to write a value
+     * compare equal.
+     *
+     * @param column the column.
+     * @param term   the term.
+     * @return the value in hexadecimal, or {@code null} if the term is missing, null or not a literal.
+     */
+    private String normalize(ColumnMetadata column, String term) {
+        if (term == null) {
+            return null;
+        }
+        String literal = term.startsWith("$$")
+                ? "'" + term.substring(2, term.length() - 2).replace("'", "''") + "'"
+                : term;
+        try {
+            TypeCodec<Object> codec = cqlSession.getContext().getCodecRegistry().codecFor(column.getType());
+            ByteBuffer value =
+                    codec.encode(codec.parse(literal), cqlSession.getContext().getProtocolVersion());
+            return value == null ? null : ByteUtils.toHexString(value);
+        } catch (RuntimeException e) {
+            // a function call, a cast or anything else that only the node can evaluate
+            return null;
+        }
+    }
+
+    private int readThreshold(CqlSession cqlSession) {
+        try {
+            Row row = cqlSession
+                    .execute("SELECT value FROM system_views.settings WHERE name = 'batch_size_warn_threshold'")
+                    .one();
+            if (row != null && row.getString(0) != null) {
+                Matcher matcher = SIZE.matcher(row.getString(0).trim());
+                if (matcher.matches()) {
+                    int size = Integer.parseInt(matcher.group(1));
+                    String unit =
+                            matcher.group(2) == null ? "B" : matcher.group(2).toUpperCase(Locale.ROOT);
+                    return unit.startsWith("K") ? size * 1024 : unit.startsWith("M") ? size * 1024 * 1024 : size;
+                }
+            }
+        } catch (Exception e) {
+            // the settings table only exists from Cassandra 4.0 on
+            log.debug(e.getLocalizedMessage(), e);
+        }
+        return DEFAULT_THRESHOLD;
+    }
+
+    private static final class Batch {
+        private final List<String> statements = new ArrayList<>();
+
+        private final Set<String> rows = new HashSet<>();
+
+        private int bytes;
+    }
+
+    /**
+     * The table a simple insert or update writes to and the values it gives to the columns of the primary key.
+     */
+    private static final class Write {
+        private final CqlIdentifier keyspace;
+
+        private final CqlIdentifier table;
+
+        private final Map<CqlIdentifier, String> keys = new HashMap<>();
+
+        private Write(CqlIdentifier keyspace, CqlIdentifier table) {
+            this.keyspace = keyspace;
+            this.table = table;
+        }
+
+        /**
+         * Parses an {@code INSERT INTO table (columns) VALUES (terms)} or
+         * {@code UPDATE table SET assignments WHERE column = term AND ...} statement, either of which may have a
+         * {@code USING} clause but no condition.
+         *
+         * @param statement the statement.
+         * @return the write, or {@code null} if the statement is not a simple insert or update.
+         */
+        static Write parse(String statement) {
+            List<String> tokens = CqlTokenizer.tokenize(statement);
+            if (tokens == null || tokens.size() < 4 || containsWord(tokens, "IF")) {
+                return null;
+            }
+            if (tokens.get(0).equalsIgnoreCase("INSERT") && tokens.get(1).equalsIgnoreCase("INTO")) {
+                return parseInsert(tokens);
+            }
+            if (tokens.get(0).equalsIgnoreCase("UPDATE")) {
+                return parseUpdate(tokens);
+            }
+            return null;
+        }
+
+        private static Write parseInsert(List<String> tokens) {
+            int[] position = {2};
+            Write write = parseTable(tokens, position);
+            if (write == null || !"(".equals(get(tokens, position[0]))) {
+                return null;
+            }
+            List<String> columns = new ArrayList<>();
+            for (position[0]++; ; position[0]++) {
+                String column = get(tokens, position[0]++);
+                if (column == null || !isIdentifier(column)) {
+                    return null;
+                }
+                columns.add(column);
+                String next = get(tokens, position[0]);
+                if (")".equals(next)) {
+                    break;
+                }
+                if (!",".equals(next)) {
+                    return null;
+                }
+            }
+            position[0]++;
+            if (!"VALUES".equalsIgnoreCase(get(tokens, position[0]++)) || !"(".equals(get(tokens, position[0]++))) {
+                return null;
+            }
+            for (String column : columns) {
+                String term = parseTerm(tokens, position);
+                String next = get(tokens, position[0]++);
+                if (term == null || !",".equals(next) && !")".equals(next)) {
+                    return null;
+                }
+                write.put(column, term);
+            }
+            return write;
+        }
+
+        private static Write parseUpdate(List<String> tokens) {
+            int[] position = {1};
+            Write write = parseTable(tokens, position);
+            if (write == null) {
+                return null;
+            }
+            int where = -1;
+            for (int i = position[0]; i < tokens.size(); i++) {
+                if (tokens.get(i).equalsIgnoreCase("WHERE")) {
+                    where = i;
+                    break;
+                }
+            }
+            if (where < 0) {
+                return null;
+            }
+            position[0] = where + 1;
+            while (true) {
+                String column = get(tokens, position[0]++);
+                if (column == null || !isIdentifier(column) || !"=".equals(get(tokens, position[0]++))) {
+                    return null;
+                }
+                String term = parseTerm(tokens, position);
+                if (term == null) {
+                    return null;
+                }
+                write.put(column, term);
+                String next = get(tokens, position[0]++);
+                if (next == null) {
+                    return write;
+                }
+                if (!next.equalsIgnoreCase("AND")) {
+                    return null;
+                }
+            }
+        }
+
+        private static Write parseTable(List<String> tokens, int[] position) {
+            String name = get(tokens, position[0]++);
+            if (name == null || !isIdentifier(name)) {
+                return null;
+            }
+            if (!".".equals(get(tokens, position[0]))) {
+                return new Write(null, CqlIdentifier.fromCql(name));
+            }
+            String table = get(tokens, position[0] + 1);
+            if (table == null || !isIdentifier(table)) {
+                return null;
+            }
+            position[0] += 2;
+            return new Write(CqlIdentifier.fromCql(name), CqlIdentifier.fromCql(table));
+        }
+
+        /**
+         * Reads a term up to the next {@code ,}, {@code )} or {@code AND} at the top level.
+         */
+        private static String parseTerm(List<String> tokens, int[] position) {
+            StringBuilder term = new StringBuilder();
+            int depth = 0;
+            for (String token = get(tokens, position[0]); token != null; token = get(tokens, ++position[0])) {
+                if (depth == 0 && (",".equals(token) || ")".equals(token) || token.equalsIgnoreCase("AND"))) {
+                    break;
+                }
+                if ("?".equals(token) || token.startsWith(":")) {
+                    // bind markers have no value
+                    return null;
+                }
+                if ("(".equals(token) || "[".equals(token) || "{".equals(token)) {
+                    depth++;
+                } else if (")".equals(token) || "]".equals(token) || "}".equals(token)) {
+                    depth--;
+                }
+                term.append(token);
+            }
+            return term.length() == 0 ? null : term.toString();
+        }
+
+        private void put(String column, String term) {
+            keys.put(CqlIdentifier.fromCql(column), term);
+        }
+
+        private static String get(List<String> tokens, int index) {
+            return index < tokens.size() ? tokens.get(index) : null;
+        }
+
+        private static boolean isIdentifier(String token) {
+            char c = token.charAt(0);
+            return Character.isLetter(c) || c == '"';
+        }
+
+        private static boolean containsWord(List<String> tokens, String word) {
+            for (String token : tokens) {
+                if (token.equalsIgnoreCase(word)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package org.codehaus.mojo.cassandra;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.util.List;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
 
-import com.datastax.oss.driver.api.core.cql.Row;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.TypeParser;
 import org.apache.cassandra.exceptions.ConfigurationException;
@@ -56,6 +62,32 @@ public class CqlExecCassandraMojo extends AbstractCqlExecMojo {
     @Parameter(property = "cql.comparator")
     protected String comparator = "BytesType";
 
+    /**
+     * The file the rows returned by the statements are written to, in the {@code outputFormat}. The rows are written
+     * as they are fetched, a page at a time, rather than collected first.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.cql.outputFile")
+    protected File outputFile;
+
+    /**
+     * The format of the {@code outputFile}: {@code CSV} for comma separated values with a header line of column
+     * names, {@code JSONL} for a JSON object per line or {@code CQL} for an {@code INSERT} statement per row.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.cql.outputFormat", defaultValue = "CSV")
+    protected String outputFormat = "CSV";
+
+    /**
+     * The maximum number of rows logged. A negative number logs them all.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.cql.maxLoggedRows", defaultValue = "-1")
+    protected int maxLoggedRows = -1;
+
     private AbstractType<?> comparatorVal;
     private AbstractType<?> keyValidatorVal;
     private AbstractType<?> defaultValidatorVal;
@@ -78,23 +110,38 @@ public class CqlExecCassandraMojo extends AbstractCqlExecMojo {
             cqlStatement = readFile(cqlScript);
         }
 
-        printResults(executeCql(cqlStatement));
+        CqlRowSink.Format format;
+        try {
+            format = CqlRowSink.Format.valueOf(outputFormat.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(
+                    "Unknown outputFormat " + outputFormat + ", expected one of "
+                            + Arrays.toString(CqlRowSink.Format.values()),
+                    e);
+        }
+        if (outputFile == null) {
+            printResults(new CqlRowSink(null, format, maxLoggedRows, getLog()));
+            return;
+        }
+        outputFile.getAbsoluteFile().getParentFile().mkdirs();
+        try (Writer writer =
+                new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8))) {
+            printResults(new CqlRowSink(writer, format, maxLoggedRows, getLog()));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not write the results to " + outputFile, e);
+        }
     }
 
     /*
-     * Encapsulate print of CqlResult. Uses specified configuration options to format results
+     * Streams the rows returned to the log and the output file, if any.
      */
-    private void printResults(List<Row> results) {
-        // TODO fix ghetto formatting
+    private void printResults(CqlRowSink sink) throws MojoExecutionException {
         getLog().info("-----------------------------------------------");
-        for (Row result : results) {
-            printRow(result);
+        executeCql(cqlStatement, sink);
+        try {
+            sink.finish();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not write the results to " + outputFile, e);
         }
     }
-
-    private void printRow(Row row) {
-        getLog().info("-----------------------------------------------");
-        getLog().info(row.getFormattedContents());
-        getLog().info("-----------------------------------------------");
-    }
 }
@@ -1,6 +1,9 @@
 package org.codehaus.mojo.cassandra;
 
+import com.datastax.oss.driver.api.core.CqlIdentifier;
 import com.datastax.oss.driver.api.core.CqlSession;
+import org.apache.maven.execution.MavenSession;
+import org.codehaus.plexus.util.StringUtils;
 
 public abstract class CqlOperation {
 
@@ -8,6 +11,8 @@ public abstract class CqlOperation {
     private final String rpcAddress;
     private final int nativeTransportPort;
     private String cqlVersion = "3.4.0";
+    private MavenSession mavenSession;
+    private boolean exclusive;
 
     public CqlOperation(String rpcAddress, int nativeTransportPort) {
         this.rpcAddress = rpcAddress;
@@ -24,6 +29,19 @@ public abstract class CqlOperation {
         this.keyspace = keyspace;
     }
 
+    /**
+     * Returns the keyspace to set on the statements the operation executes with a session: its keyspace, unless the
+     * session is connected to a keyspace, as it is when the protocol of the node cannot set one per statement.
+     *
+     * @param cqlSession the session.
+     * @return the keyspace, or {@code null} to execute the statements in the keyspace of the session.
+     */
+    CqlIdentifier getStatementKeyspace(CqlSession cqlSession) {
+        return StringUtils.isBlank(keyspace) || cqlSession.getKeyspace().isPresent()
+                ? null
+                : CqlIdentifier.fromCql(keyspace);
+    }
+
     public String getRpcAddress() {
         return rpcAddress;
     }
@@ -39,4 +57,26 @@ public abstract class CqlOperation {
     public void setCqlVersion(String cqlVersion) {
         this.cqlVersion = cqlVersion;
     }
+
+    /**
+     * Whether the operation needs a driver session that no one else uses while it runs, as it executes {@code USE}
+     * statements, which switch the keyspace of the session.
+     *
+     * @return {@code true} if the session must not be shared while the operation runs.
+     */
+    public boolean isExclusive() {
+        return exclusive;
+    }
+
+    public void setExclusive(boolean exclusive) {
+        this.exclusive = exclusive;
+    }
+
+    public MavenSession getMavenSession() {
+        return mavenSession;
+    }
+
+    public void setMavenSession(MavenSession mavenSession) {
+        this.mavenSession = mavenSession;
+    }
 }
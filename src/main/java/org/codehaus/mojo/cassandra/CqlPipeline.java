@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Executes a sequence of statements, sending the data manipulation statements between two barriers asynchronously
+ * with at most a given number of them in flight. Any other statement is a barrier: it is only executed once the
+ * statements sent before it have completed. The writes keep their order as the driver gives each of them a
+ * client-side timestamp as it is sent; conditional updates are barriers as they do not go by timestamp. Statements
+ * are turned into prepared ones by the {@link CqlShapes}, if any. The statements are executed in the keyspace set on
+ * them, so that a session can serve several keyspaces at once; once a {@code USE} statement has switched the keyspace
+ * of the session, they are executed in that one.
+ */
+final class CqlPipeline {
+    private final CqlSession cqlSession;
+
+    private final int maxInFlight;
+
+    private final Semaphore inFlight;
+
+    private final CqlShapes shapes;
+
+    private final Log log;
+
+    private CqlIdentifier keyspace;
+
+    private int pageSize;
+
+    private String failedStatement;
+
+    private volatile Throwable failure;
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param cqlSession  the session to execute the statements with.
+     * @param maxInFlight the maximum number of statements in flight, {@code 1} or less executes them one at a time.
+     * @param keyspace    the keyspace to set on the statements, or {@code null} for the keyspace of the session.
+     * @param shapes      the cache of prepared statements, or {@code null} to execute the statements as they are.
+     * @param log         the log to write to.
+     */
+    CqlPipeline(CqlSession cqlSession, int maxInFlight, CqlIdentifier keyspace, CqlShapes shapes, Log log) {
+        this.cqlSession = cqlSession;
+        this.keyspace = keyspace;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.shapes = shapes;
+        this.log = log;
+    }
+
+    /**
+     * Sets the number of rows fetched per page by the statements that are not pipelined.
+     *
+     * @param pageSize the number of rows, {@code 0} or less for the default of the driver.
+     */
+    void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Returns the keyspace the statements are executed in, unless they name another.
+     *
+     * @return the keyspace, or {@code null} if there is none.
+     */
+    CqlIdentifier getKeyspace() {
+        return keyspace != null ? keyspace : cqlSession.getKeyspace().orElse(null);
+    }
+
+    /**
+     * Executes a statement, or sends it if it can be pipelined.
+     *
+     * @param statement the statement.
+     * @return the result of the statement, or {@code null} if it was sent asynchronously.
+     * @throws CqlExecutionException if the statement, or one sent before it, failed.
+     */
+    ResultSet execute(String statement) throws CqlExecutionException {
+        if (log.isDebugEnabled()) {
+            log.debug("Executing cql statement: " + statement);
+        }
+        if (maxInFlight > 1 && isPipelined(statement)) {
+            send(toStatement(statement), () -> statement);
+            return null;
+        }
+        drain();
+        try {
+            if (isUse(statement)) {
+                ResultSet resultSet = cqlSession.execute(statement);
+                // the statements that follow go to the keyspace the session was switched to
+                keyspace = keyspace != null && CqlSessions.setsKeyspacePerStatement(cqlSession)
+                        ? cqlSession.getKeyspace().orElse(null)
+                        : null;
+                return resultSet;
+            }
+            Statement<?> executed = toStatement(statement);
+            return cqlSession.execute(pageSize > 0 ? executed.setPageSize(pageSize) : executed);
+        } catch (Exception e) {
+            log.debug(statement);
+            throw new CqlExecutionException(e);
+        }
+    }
+
+    /**
+     * Executes writes as an unlogged batch, or sends it if writes can be pipelined.
+     *
+     * @param statements the writes, not to be modified until they have completed.
+     * @throws CqlExecutionException if the batch, or a statement sent before it, failed.
+     */
+    void executeBatch(List<String> statements) throws CqlExecutionException {
+        if (log.isDebugEnabled()) {
+            log.debug("Executing cql batch of " + statements.size() + " statements");
+        }
+        List<BatchableStatement<?>> batch = new ArrayList<>(statements.size());
+        for (String statement : statements) {
+            batch.add((BatchableStatement<?>) toStatement(statement));
+        }
+        BatchStatement batchStatement = BatchStatement.newInstance(DefaultBatchType.UNLOGGED, batch);
+        if (keyspace != null) {
+            batchStatement = batchStatement.setKeyspace(keyspace);
+        }
+        if (maxInFlight > 1) {
+            send(batchStatement, () -> describe(statements));
+            return;
+        }
+        try {
+            cqlSession.execute(batchStatement);
+        } catch (Exception e) {
+            log.debug(describe(statements));
+            throw new CqlExecutionException(e);
+        }
+    }
+
+    /**
+     * Waits for the statements in flight to complete.
+     *
+     * @throws CqlExecutionException if any of them failed.
+     */
+    void drain() throws CqlExecutionException {
+        acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+        checkFailure();
+    }
+
+    /**
+     * Returns {@code true} if the statement can be sent without waiting for the statements sent before it: inserts,
+     * updates, deletes and batches of them that are not conditional.
+     *
+     * @param statement the statement.
+     * @return {@code true} if the statement can be pipelined.
+     */
+    static boolean isPipelined(String statement) {
+        List<String> tokens = CqlTokenizer.tokenize(statement);
+        if (tokens == null || tokens.isEmpty()) {
+            return false;
+        }
+        switch (tokens.get(0).toUpperCase(Locale.ROOT)) {
+            case "INSERT":
+            case "UPDATE":
+            case "DELETE":
+            case "BEGIN":
+                for (String token : tokens) {
+                    if (token.equalsIgnoreCase("IF")) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the statement switches the keyspace of the session.
+     *
+     * @param statement the statement.
+     * @return {@code true} if the statement is a {@code USE} statement.
+     */
+    static boolean isUse(String statement) {
+        List<String> tokens = CqlTokenizer.tokenize(statement);
+        return tokens != null && !tokens.isEmpty() && tokens.get(0).equalsIgnoreCase("USE");
+    }
+
+    private Statement<?> toStatement(String statement) {
+        if (shapes != null) {
+            return shapes.toStatement(statement, keyspace);
+        }
+        SimpleStatement simpleStatement = SimpleStatement.newInstance(statement);
+        return keyspace == null ? simpleStatement : simpleStatement.setKeyspace(keyspace);
+    }
+
+    private static String describe(List<String> statements) {
+        return statements.size() == 1
+                ? statements.get(0)
+                : "BEGIN UNLOGGED BATCH " + String.join("; ", statements) + "; APPLY BATCH";
+    }
+
+    /**
+     * Sends a statement once fewer than the maximum number of statements are in flight. Unlike the other methods,
+     * this one may be called by several threads at once.
+     *
+     * @param statement   the statement.
+     * @param description describes the statement if it fails.
+     * @throws CqlExecutionException if a statement sent before failed.
+     */
+    void send(Statement<?> statement, Supplier<String> description) throws CqlExecutionException {
+        acquire(1);
+        if (failure != null) {
+            inFlight.release();
+            checkFailure();
+        }
+        cqlSession.executeAsync(statement).whenComplete((resultSet, e) -> {
+            if (e != null) {
+                fail(description.get(), e);
+            }
+            inFlight.release();
+        });
+    }
+
+    private void acquire(int permits) throws CqlExecutionException {
+        try {
+            inFlight.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CqlExecutionException(e);
+        }
+    }
+
+    private synchronized void fail(String statement, Throwable e) {
+        if (failure == null) {
+            failedStatement = statement;
+            failure = e;
+        }
+    }
+
+    private synchronized void checkFailure() throws CqlExecutionException {
+        if (failure != null) {
+            log.error("Failed cql statement: " + failedStatement);
+            throw new CqlExecutionException(failure);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.data.ByteUtils;
+import com.datastax.oss.driver.api.core.data.TupleValue;
+import com.datastax.oss.driver.api.core.data.UdtValue;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Writes the rows of result sets as they are paged in, so that no more than a page of them is held in memory. The
+ * rows are logged up to a given number, and written to a file, if any, in one of the {@link Format formats}.
+ */
+final class CqlRowSink {
+    private static final String SEPARATOR = "-----------------------------------------------";
+
+    /**
+     * The formats rows are written in.
+     */
+    enum Format {
+        /**
+         * Comma separated values as of RFC 4180, a header line of column names before the rows of each result set.
+         * Collections, tuples and user defined types are given as CQL literals.
+         */
+        CSV,
+        /**
+         * A JSON object per line, keyed by column name.
+         */
+        JSONL,
+        /**
+         * An {@code INSERT} statement per row, the values being given as CQL literals and the null ones left out.
+         */
+        CQL
+    }
+
+    private final Writer writer;
+
+    private final Format format;
+
+    private final int maxLoggedRows;
+
+    private final Log log;
+
+    private long rows;
+
+    /**
+     * Creates a sink.
+     *
+     * @param writer        the writer to write the rows to, or {@code null} to only log them.
+     * @param format        the format of the rows written.
+     * @param maxLoggedRows the maximum number of rows logged, a negative number logs them all.
+     * @param log           the log to write to.
+     */
+    CqlRowSink(Writer writer, Format format, int maxLoggedRows, Log log) {
+        this.writer = writer;
+        this.format = format;
+        this.maxLoggedRows = maxLoggedRows;
+        this.log = log;
+    }
+
+    /**
+     * Writes the rows of a result set, fetching its pages as they are needed.
+     *
+     * @param resultSet the result set.
+     * @throws IOException if the rows could not be written.
+     */
+    void accept(ResultSet resultSet) throws IOException {
+        ColumnDefinitions columns = resultSet.getColumnDefinitions();
+        if (writer != null && format == Format.CSV && columns.size() > 0) {
+            writeHeader(columns);
+        }
+        for (Row row : resultSet) {
+            if (maxLoggedRows < 0 || rows < maxLoggedRows) {
+                log.info(SEPARATOR);
+                log.info(row.getFormattedContents());
+                log.info(SEPARATOR);
+            }
+            if (writer != null) {
+                writeRow(row, columns);
+            }
+            rows++;
+        }
+    }
+
+    /**
+     * Logs the number of rows written, and flushes them.
+     *
+     * @throws IOException if the rows could not be flushed.
+     */
+    void finish() throws IOException {
+        if (maxLoggedRows >= 0 && rows > maxLoggedRows) {
+            log.info("... " + (rows - maxLoggedRows) + " more row(s) not logged");
+        }
+        if (writer != null) {
+            writer.flush();
+            log.info("Wrote " + rows + " row(s) as " + format.name().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private void writeHeader(ColumnDefinitions columns) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(csv(columns.get(i).getName().asInternal()));
+        }
+        writer.write("\r\n");
+    }
+
+    private void writeRow(Row row, ColumnDefinitions columns) throws IOException {
+        switch (format) {
+            case CSV:
+                for (int i = 0; i < columns.size(); i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    Object value = get(row, i);
+                    if (value != null) {
+                        writer.write(csv(isComposite(value) ? codec(row, i).format(value) : text(value)));
+                    }
+                }
+                writer.write("\r\n");
+                break;
+            case JSONL:
+                StringBuilder json = new StringBuilder("{");
+                for (int i = 0; i < columns.size(); i++) {
+                    if (i > 0) {
+                        json.append(',');
+                    }
+                    appendJsonString(json, columns.get(i).getName().asInternal());
+                    json.append(':');
+                    appendJson(json, get(row, i));
+                }
+                writer.write(json.append("}\n").toString());
+                break;
+            default:
+                StringBuilder names = new StringBuilder();
+                StringBuilder values = new StringBuilder();
+                for (int i = 0; i < columns.size(); i++) {
+                    Object value = get(row, i);
+                    if (value != null) {
+                        String separator = names.length() == 0 ? "" : ", ";
+                        names.append(separator).append(columns.get(i).getName().asCql(true));
+                        values.append(separator).append(codec(row, i).format(value));
+                    }
+                }
+                if (names.length() > 0) {
+                    ColumnDefinition first = columns.get(0);
+                    writer.write("INSERT INTO " + first.getKeyspace().asCql(true) + "."
+                            + first.getTable().asCql(true) + " (" + names + ") VALUES (" + values + ");\n");
+                }
+                break;
+        }
+    }
+
+    private static TypeCodec<Object> codec(Row row, int i) {
+        return row.codecRegistry().codecFor(row.getType(i));
+    }
+
+    private static Object get(Row row, int i) {
+        return row.isNull(i) ? null : row.get(i, codec(row, i));
+    }
+
+    private static boolean isComposite(Object value) {
+        return value instanceof Collection
+                || value instanceof Map
+                || value instanceof UdtValue
+                || value instanceof TupleValue;
+    }
+
+    /**
+     * Returns the text of a value that is neither a collection, a tuple nor a user defined type.
+     *
+     * @param value the value.
+     * @return its text, blobs being given as hexadecimal literals.
+     */
+    static String text(Object value) {
+        if (value instanceof ByteBuffer) {
+            return ByteUtils.toHexString((ByteBuffer) value);
+        }
+        if (value instanceof InetAddress) {
+            return ((InetAddress) value).getHostAddress();
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Quotes a field of comma separated values if it is empty or holds a comma, a quote or a line break.
+     *
+     * @param field the field.
+     * @return the field as it is written.
+     */
+    static String csv(String field) {
+        if (field.isEmpty()) {
+            // an empty field that is not quoted stands for null
+            return "\"\"";
+        }
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                return '"' + field.replace("\"", "\"\"") + '"';
+            }
+        }
+        return field;
+    }
+
+    /**
+     * Appends a value as JSON: numbers and booleans as they are, collections as arrays, maps and user defined types as
+     * objects, tuples as arrays and anything else as a string.
+     *
+     * @param json  the JSON to append to.
+     * @param value the value, may be {@code null}.
+     */
+    static void appendJson(StringBuilder json, Object value) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Boolean
+                || value instanceof Number
+                        && !(value instanceof Double && !Double.isFinite((Double) value))
+                        && !(value instanceof Float && !Float.isFinite((Float) value))) {
+            json.append(value);
+        } else if (value instanceof Collection) {
+            json.append('[');
+            for (Iterator<?> i = ((Collection<?>) value).iterator(); i.hasNext(); ) {
+                appendJson(json, i.next());
+                if (i.hasNext()) {
+                    json.append(',');
+                }
+            }
+            json.append(']');
+        } else if (value instanceof Map) {
+            json.append('{');
+            for (Iterator<? extends Map.Entry<?, ?>> i =
+                            ((Map<?, ?>) value).entrySet().iterator();
+                    i.hasNext(); ) {
+                Map.Entry<?, ?> entry = i.next();
+                appendJsonString(json, text(entry.getKey()));
+                json.append(':');
+                appendJson(json, entry.getValue());
+                if (i.hasNext()) {
+                    json.append(',');
+                }
+            }
+            json.append('}');
+        } else if (value instanceof UdtValue) {
+            UdtValue udt = (UdtValue) value;
+            json.append('{');
+            for (int i = 0; i < udt.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendJsonString(json, udt.getType().getFieldNames().get(i).asInternal());
+                json.append(':');
+                appendJson(json, udt.getObject(i));
+            }
+            json.append('}');
+        } else if (value instanceof TupleValue) {
+            TupleValue tuple = (TupleValue) value;
+            json.append('[');
+            for (int i = 0; i < tuple.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendJson(json, tuple.getObject(i));
+            }
+            json.append(']');
+        } else {
+            appendJsonString(json, text(value));
+        }
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the statements of a CQL script one at a time, so that only the statement being read is held in memory however
+ * large the script. Statements end with a {@code ;} outside of string literals, quoted identifiers and {@code $$}
+ * blocks. Comments are dropped.
+ */
+final class CqlScriptReader implements Closeable {
+    private static final int NONE = -2;
+
+    private final Reader reader;
+
+    private int lookahead = NONE;
+
+    /**
+     * Creates a reader of the statements of a script.
+     *
+     * @param reader the script, buffered by this reader.
+     */
+    CqlScriptReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+    }
+
+    /**
+     * Reads the next statement.
+     *
+     * @return the statement, trimmed and without its terminating {@code ;}, or {@code null} at the end of the script.
+     * @throws IOException if the script could not be read.
+     */
+    String nextStatement() throws IOException {
+        StringBuilder statement = new StringBuilder();
+        for (int c = read(); c != -1; c = read()) {
+            switch (c) {
+                case ';':
+                    String result = statement.toString().trim();
+                    if (!result.isEmpty()) {
+                        return result;
+                    }
+                    statement.setLength(0);
+                    break;
+                case '\'':
+                case '"':
+                    readQuoted(c, statement);
+                    break;
+                case '$':
+                    if (peek() == '$') {
+                        read();
+                        readDollarQuoted(statement);
+                    } else {
+                        statement.append('$');
+                    }
+                    break;
+                case '-':
+                    if (peek() == '-') {
+                        skipLine(statement);
+                    } else {
+                        statement.append('-');
+                    }
+                    break;
+                case '/':
+                    if (peek() == '/') {
+                        skipLine(statement);
+                    } else if (peek() == '*') {
+                        read();
+                        skipBlockComment(statement);
+                    } else {
+                        statement.append('/');
+                    }
+                    break;
+                default:
+                    statement.append((char) c);
+            }
+        }
+        String result = statement.toString().trim();
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads a string literal or quoted identifier, in which the quote is escaped by doubling it.
+     */
+    private void readQuoted(int quote, StringBuilder statement) throws IOException {
+        statement.append((char) quote);
+        for (int c = read(); c != -1; c = read()) {
+            statement.append((char) c);
+            if (c == quote) {
+                if (peek() != quote) {
+                    return;
+                }
+                statement.append((char) read());
+            }
+        }
+    }
+
+    private void readDollarQuoted(StringBuilder statement) throws IOException {
+        statement.append("$$");
+        for (int c = read(); c != -1; c = read()) {
+            statement.append((char) c);
+            if (c == '$' && peek() == '$') {
+                statement.append((char) read());
+                return;
+            }
+        }
+    }
+
+    private void skipLine(StringBuilder statement) throws IOException {
+        for (int c = read(); c != -1; c = read()) {
+            if (c == '\n') {
+                break;
+            }
+        }
+        statement.append('\n');
+    }
+
+    private void skipBlockComment(StringBuilder statement) throws IOException {
+        for (int c = read(); c != -1; c = read()) {
+            if (c == '*' && peek() == '/') {
+                read();
+                break;
+            }
+        }
+        statement.append(' ');
+    }
+
+    private int read() throws IOException {
+        if (lookahead != NONE) {
+            int c = lookahead;
+            lookahead = NONE;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private int peek() throws IOException {
+        if (lookahead == NONE) {
+            lookahead = reader.read();
+        }
+        return lookahead;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.datastax.dse.driver.api.core.DseProtocolVersion;
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DefaultProtocolVersion;
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.codehaus.plexus.util.StringUtils;
+import org.eclipse.aether.SessionData;
+
+/**
+ * The driver sessions of a build, kept in the Maven session so that the goals of the build share them rather than
+ * each connecting and loading the cluster metadata anew. A session is kept per contact point and port, and lent to any
+ * number of borrowers at a time, each of which sets its keyspace on the statements it executes; only a node whose
+ * protocol cannot set the keyspace per statement, before v5, gets a session per keyspace. A borrower that runs a
+ * script with {@code USE} statements, which switch the keyspace of the whole session, borrows it exclusively: it gets
+ * a session no one else is using, which is only lent again once it is handed back with its keyspace unchanged. The
+ * borrowers of a session are counted, so that a session is only closed once the last of them has handed it back. The
+ * sessions to a node are closed when it is stopped, and the remaining ones when the Maven session ends.
+ */
+final class CqlSessions {
+    /**
+     * The registry holds driver classes, so each plugin class realm keeps its own.
+     */
+    private static final String KEY =
+            CqlSessions.class.getName() + "@" + Integer.toHexString(System.identityHashCode(CqlSessions.class));
+
+    /**
+     * How long the end of the build waits for the sessions to close.
+     */
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    /**
+     * The sessions that can be lent, by {@link #key(String, int, String)}.
+     */
+    private final Map<String, CqlSession> sessions = new HashMap<>();
+
+    /**
+     * The key of every open session, whether it can still be lent or not.
+     */
+    private final Map<CqlSession, String> keys = new IdentityHashMap<>();
+
+    /**
+     * The number of borrowers of every open session that was lent.
+     */
+    private final Map<CqlSession, Integer> borrowers = new IdentityHashMap<>();
+
+    /**
+     * The sessions lent exclusively, until they are handed back or their node is stopped.
+     */
+    private final Set<CqlSession> exclusive = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private CqlSessions() {}
+
+    /**
+     * Returns the registry of a build, creating it on first use.
+     *
+     * @param session the Maven session, may be {@code null}.
+     * @return the registry, or {@code null} if there is no Maven session.
+     */
+    static CqlSessions get(MavenSession session) {
+        if (session == null || session.getRepositorySession() == null) {
+            return null;
+        }
+        SessionData data = session.getRepositorySession().getData();
+        synchronized (CqlSessions.class) {
+            Object registry = data.get(KEY);
+            if (registry == null) {
+                CqlSessions sessions = new CqlSessions();
+                if (session.getRequest() != null) {
+                    sessions.closeAtSessionEnd(session.getRequest());
+                }
+                registry = sessions;
+                data.set(KEY, registry);
+            }
+            return (CqlSessions) registry;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the protocol a session speaks sets the keyspace per statement, as it does from v5 on.
+     *
+     * @param session the session.
+     * @return {@code true} if {@link com.datastax.oss.driver.api.core.cql.Statement#setKeyspace(CqlIdentifier)} can
+     *     be used with the session.
+     */
+    static boolean setsKeyspacePerStatement(CqlSession session) {
+        ProtocolVersion version = session.getContext().getProtocolVersion();
+        return version.getCode() >= DefaultProtocolVersion.V5.getCode() && version != DseProtocolVersion.DSE_V1;
+    }
+
+    /**
+     * Lends the session to a node, connecting it first if there is none. A borrower with a keyspace sets it on its
+     * statements, unless the protocol of the node cannot, in which case it gets a session connected to the keyspace.
+     * An exclusive borrower gets the session only if no one else is using it, and a session of its own otherwise;
+     * either way, the session is not lent to anyone else until it is handed back.
+     *
+     * @param rpcAddress          the address of the node.
+     * @param nativeTransportPort the native transport port of the node.
+     * @param keyspace            the keyspace of the borrower, blank for none.
+     * @param exclusive           whether the borrower may switch the keyspace of the session.
+     * @param connect             connects a session to the node and the keyspace it is given, if not {@code null}.
+     * @return the session, to be handed back with {@link #release(CqlSession)}.
+     */
+    synchronized CqlSession borrow(
+            String rpcAddress,
+            int nativeTransportPort,
+            String keyspace,
+            boolean exclusive,
+            Function<String, CqlSession> connect) {
+        String key = key(rpcAddress, nativeTransportPort, null);
+        CqlSession session = lendable(key);
+        String connected = null;
+        if (StringUtils.isNotBlank(keyspace)) {
+            if (session == null) {
+                session = connect.apply(null);
+                keys.put(session, key);
+                sessions.put(key, session);
+            }
+            if (!setsKeyspacePerStatement(session)) {
+                key = key(rpcAddress, nativeTransportPort, keyspace);
+                session = lendable(key);
+                connected = keyspace;
+            }
+        }
+        if (exclusive) {
+            if (session != null && borrowers.getOrDefault(session, 0) == 0) {
+                sessions.remove(key);
+            } else {
+                session = connect.apply(connected);
+                keys.put(session, key);
+            }
+            this.exclusive.add(session);
+        } else if (session == null) {
+            session = connect.apply(connected);
+            keys.put(session, key);
+            sessions.put(key, session);
+        }
+        borrowers.merge(session, 1, Integer::sum);
+        return session;
+    }
+
+    /**
+     * Hands a session back. A session whose keyspace was switched is no longer lent, and is closed once its last
+     * borrower has handed it back. A session lent exclusively is lent again, unless another session has taken its
+     * place in the meantime, in which case it is closed.
+     *
+     * @param session the session.
+     */
+    synchronized void release(CqlSession session) {
+        String key = keys.get(session);
+        if (key == null) {
+            // closed with all the others
+            return;
+        }
+        String keyspace = key.substring(key.indexOf('/') + 1);
+        Optional<CqlIdentifier> expected =
+                keyspace.isEmpty() ? Optional.empty() : Optional.of(CqlIdentifier.fromCql(keyspace));
+        boolean switched = !expected.equals(session.getKeyspace());
+        if (switched) {
+            sessions.remove(key, session);
+        }
+        if (exclusive.remove(session) && !switched && !sessions.containsKey(key)) {
+            sessions.put(key, session);
+        }
+        if (borrowers.merge(session, -1, Integer::sum) <= 0 && sessions.get(key) != session) {
+            close(session);
+        }
+    }
+
+    /**
+     * Closes the sessions to a node, before it stops. A session still borrowed is closed once it is handed back.
+     *
+     * @param rpcAddress          the address of the node.
+     * @param nativeTransportPort the native transport port of the node.
+     */
+    synchronized void close(String rpcAddress, int nativeTransportPort) {
+        String prefix = key(rpcAddress, nativeTransportPort, null);
+        for (Iterator<Map.Entry<String, CqlSession>> i = sessions.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry<String, CqlSession> entry = i.next();
+            if (entry.getKey().startsWith(prefix)) {
+                i.remove();
+                if (borrowers.getOrDefault(entry.getValue(), 0) <= 0) {
+                    close(entry.getValue());
+                }
+            }
+        }
+        // sessions lent exclusively are closed once handed back
+        exclusive.removeIf(session -> keys.get(session).startsWith(prefix));
+    }
+
+    /**
+     * Closes all the sessions, whether borrowed or not, and waits for them to close.
+     */
+    void closeAll() {
+        List<CompletableFuture<?>> closing = new ArrayList<>();
+        synchronized (this) {
+            for (CqlSession session : keys.keySet()) {
+                closing.add(session.forceCloseAsync().toCompletableFuture());
+            }
+            sessions.clear();
+            keys.clear();
+            borrowers.clear();
+            exclusive.clear();
+        }
+        try {
+            CompletableFuture.allOf(closing.toArray(new CompletableFuture[0]))
+                    .get(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // the build is over, a session that does not close in time is left to the JVM
+        }
+    }
+
+    /**
+     * Closes the sessions when the Maven session ends, by putting a listener in front of the execution listener of
+     * the build: the Maven core looks the listener up on the request for every event. Unlike a shutdown hook, this
+     * also closes them when the JVM outlives the build, such as in a Maven daemon, including the sessions to an
+     * external node or to one left running by {@code keepAlive}.
+     *
+     * @param request the request of the build.
+     */
+    private void closeAtSessionEnd(MavenExecutionRequest request) {
+        ExecutionListener listener = request.getExecutionListener() != null
+                ? request.getExecutionListener()
+                : new AbstractExecutionListener();
+        request.setExecutionListener((ExecutionListener) Proxy.newProxyInstance(
+                ExecutionListener.class.getClassLoader(),
+                new Class<?>[] {ExecutionListener.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("sessionEnded")) {
+                        closeAll();
+                    }
+                    try {
+                        return method.invoke(listener, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }));
+    }
+
+    /**
+     * Returns the session that can be lent under a key, dropping it if it was closed.
+     */
+    private CqlSession lendable(String key) {
+        CqlSession session = sessions.get(key);
+        if (session != null && session.isClosed()) {
+            sessions.remove(key);
+            keys.remove(session);
+            borrowers.remove(session);
+            return null;
+        }
+        return session;
+    }
+
+    private void close(CqlSession session) {
+        keys.remove(session);
+        borrowers.remove(session);
+        session.closeAsync();
+    }
+
+    private static String key(String rpcAddress, int nativeTransportPort, String keyspace) {
+        return rpcAddress + ":" + nativeTransportPort + "/" + (StringUtils.isBlank(keyspace) ? "" : keyspace);
+    }
+}
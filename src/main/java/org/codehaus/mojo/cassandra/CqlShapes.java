@@ -0,0 +1,432 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BoundStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Executes inserts, updates and deletes that only differ in their literals as one prepared statement. The literals of
+ * a statement are replaced by bind markers to give its shape, each shape is prepared once and kept in a cache of
+ * bounded size, the least recently used shape being evicted first, and the literals are parsed and bound to it.
+ * Statements whose shape cannot be prepared, or whose literals cannot be bound, are executed as they are. A shape is
+ * prepared with the keyspace set on the statements, and cached by it, so that the same shape is prepared again for
+ * another keyspace, both in this cache and in the one the driver keeps by statement. Without one, a shape whose table
+ * is not qualified by a keyspace is qualified by the keyspace of the session, so that a {@code USE} in the script does
+ * not execute it against the keyspace it was first prepared in.
+ */
+final class CqlShapes {
+    private static final int REPORTED_SHAPES = 10;
+
+    private static final Pattern UUID =
+            Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}(?![\\w-])");
+
+    private static final Pattern BLOB = Pattern.compile("0[xX][0-9a-fA-F]*(?!\\w)");
+
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?(?![\\w.])");
+
+    private final CqlSession cqlSession;
+
+    private final Log log;
+
+    private final Map<String, Shape> shapes;
+
+    private long evictedHits;
+
+    private long evictedMisses;
+
+    /**
+     * Creates a cache of shapes.
+     *
+     * @param cqlSession the session to prepare the shapes with.
+     * @param capacity   the maximum number of shapes kept.
+     * @param log        the log to write to.
+     */
+    CqlShapes(CqlSession cqlSession, final int capacity, Log log) {
+        this.cqlSession = cqlSession;
+        this.log = log;
+        this.shapes = new LinkedHashMap<String, Shape>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Shape> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                evictedHits += eldest.getValue().hits;
+                evictedMisses += eldest.getValue().misses;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the statement to execute for a CQL statement.
+     *
+     * @param cql      the statement.
+     * @param keyspace the keyspace to set on the statement, or {@code null} for the keyspace of the session.
+     * @return the prepared shape of the statement bound to its literals, or the statement as it is.
+     */
+    Statement<?> toStatement(String cql, CqlIdentifier keyspace) {
+        List<String> literals = new ArrayList<>();
+        String shapeCql = normalize(cql, literals);
+        if (shapeCql == null) {
+            return simple(cql, keyspace);
+        }
+        String key;
+        if (keyspace != null) {
+            key = keyspace.asCql(true) + "/" + shapeCql;
+        } else {
+            String sessionKeyspace =
+                    cqlSession.getKeyspace().map(k -> k.asCql(true)).orElse(null);
+            if (sessionKeyspace != null) {
+                shapeCql = qualify(shapeCql, sessionKeyspace);
+            }
+            key = shapeCql;
+        }
+        Shape shape = shapes.get(key);
+        if (shape == null) {
+            shape = new Shape(shapeCql, prepare(simple(shapeCql, keyspace)));
+            shapes.put(key, shape);
+            shape.misses++;
+        } else {
+            shape.hits++;
+        }
+        if (shape.prepared == null) {
+            return simple(cql, keyspace);
+        }
+        try {
+            return bind(shape.prepared, literals);
+        } catch (RuntimeException e) {
+            log.debug("Could not bind " + literals + " to " + shapeCql + ": " + e.getLocalizedMessage());
+            return simple(cql, keyspace);
+        }
+    }
+
+    /**
+     * Logs the number of statements executed from the cache and the number of shapes prepared, in total and for the
+     * shapes used most.
+     */
+    void report() {
+        long hits = evictedHits;
+        long misses = evictedMisses;
+        List<Shape> cached = new ArrayList<>(shapes.values());
+        for (Shape shape : cached) {
+            hits += shape.hits;
+            misses += shape.misses;
+        }
+        if (hits + misses == 0) {
+            return;
+        }
+        log.info("Prepared statement cache: " + hits + " hit(s), " + misses + " miss(es), " + cached.size()
+                + " shape(s) cached");
+        cached.sort((a, b) -> Long.compare(b.hits + b.misses, a.hits + a.misses));
+        for (int i = 0; i < cached.size(); i++) {
+            Shape shape = cached.get(i);
+            String line = "  " + shape.hits + " hit(s), " + shape.misses + " miss(es)"
+                    + (shape.prepared == null ? ", not prepared" : "") + ": " + shape.cql;
+            if (i < REPORTED_SHAPES) {
+                log.info(line);
+            } else {
+                log.debug(line);
+            }
+        }
+    }
+
+    private PreparedStatement prepare(SimpleStatement shape) {
+        try {
+            return cqlSession.prepare(shape);
+        } catch (RuntimeException e) {
+            log.debug("Could not prepare " + shape.getQuery() + ": " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private static SimpleStatement simple(String cql, CqlIdentifier keyspace) {
+        SimpleStatement statement = SimpleStatement.newInstance(cql);
+        return keyspace == null ? statement : statement.setKeyspace(keyspace);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Statement<?> bind(PreparedStatement prepared, List<String> literals) {
+        ColumnDefinitions variables = prepared.getVariableDefinitions();
+        if (variables.size() != literals.size()) {
+            throw new IllegalArgumentException("expected " + variables.size() + " literal(s)");
+        }
+        CodecRegistry codecs = cqlSession.getContext().getCodecRegistry();
+        BoundStatementBuilder builder = prepared.boundStatementBuilder();
+        for (int i = 0; i < literals.size(); i++) {
+            TypeCodec<Object> codec = codecs.codecFor(variables.get(i).getType());
+            builder.set(i, codec.parse(literals.get(i)), codec);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Replaces the literals of an insert, update or delete by bind markers: strings, numbers, UUIDs, blobs and
+     * booleans outside of collection and user type literals.
+     *
+     * @param cql      the statement.
+     * @param literals the list to add the literals replaced to, strings are given in single quotes.
+     * @return the shape of the statement, or {@code null} if it is not an insert, update or delete.
+     */
+    static String normalize(String cql, List<String> literals) {
+        String trimmed = cql.trim();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+            end++;
+        }
+        String keyword = trimmed.substring(0, end).toUpperCase(Locale.ROOT);
+        if (!keyword.equals("INSERT") && !keyword.equals("UPDATE") && !keyword.equals("DELETE")) {
+            return null;
+        }
+        StringBuilder shape = new StringBuilder(trimmed.length());
+        int depth = 0;
+        // whether a - would be a binary operator rather than the sign of a number
+        boolean afterOperand = false;
+        int length = trimmed.length();
+        int i = 0;
+        while (i < length) {
+            char c = trimmed.charAt(i);
+            int start = i;
+            if (c == '\'') {
+                i = skipQuoted(trimmed, i, '\'');
+                if (i < 0) {
+                    return null;
+                }
+                addLiteral(shape, trimmed.substring(start, i), depth, literals);
+                afterOperand = true;
+                continue;
+            }
+            if (c == '"') {
+                i = skipQuoted(trimmed, i, '"');
+                if (i < 0) {
+                    return null;
+                }
+                shape.append(trimmed, start, i);
+                afterOperand = true;
+                continue;
+            }
+            if (c == '$' && trimmed.startsWith("$$", i)) {
+                int close = trimmed.indexOf("$$", i + 2);
+                if (close < 0) {
+                    return null;
+                }
+                i = close + 2;
+                String body = trimmed.substring(start + 2, close);
+                addLiteral(shape, "'" + body.replace("'", "''") + "'", depth, literals);
+                afterOperand = true;
+                continue;
+            }
+            if (c == '-' && trimmed.startsWith("--", i) || c == '/' && trimmed.startsWith("//", i)) {
+                int newline = trimmed.indexOf('\n', i);
+                i = newline < 0 ? length : newline;
+                continue;
+            }
+            if (c == '/' && trimmed.startsWith("/*", i)) {
+                int close = trimmed.indexOf("*/", i + 2);
+                i = close < 0 ? length : close + 2;
+                shape.append(' ');
+                continue;
+            }
+            if ((Character.isDigit(c) || c == '-' || isHexLetter(c)) && !isWordPart(trimmed, i - 1)) {
+                Matcher matcher = match(trimmed, i, UUID, BLOB);
+                if (matcher == null && (Character.isDigit(c) || c == '-' && !afterOperand)) {
+                    matcher = match(trimmed, i, NUMBER);
+                }
+                if (matcher != null) {
+                    i = matcher.end();
+                    addLiteral(shape, matcher.group(), depth, literals);
+                    afterOperand = true;
+                    continue;
+                }
+            }
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                while (i < length && (Character.isLetterOrDigit(trimmed.charAt(i)) || trimmed.charAt(i) == '_')) {
+                    i++;
+                }
+                String word = trimmed.substring(start, i);
+                if (word.equalsIgnoreCase("true") || word.equalsIgnoreCase("false")) {
+                    addLiteral(shape, word, depth, literals);
+                } else {
+                    shape.append(word);
+                }
+                afterOperand = true;
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if ((c == '}' || c == ']') && depth > 0) {
+                depth--;
+            }
+            if (!Character.isWhitespace(c)) {
+                afterOperand = c == ')' || c == ']' || c == '}';
+            }
+            shape.append(c);
+            i++;
+        }
+        return shape.toString();
+    }
+
+    /**
+     * Qualifies the table of an insert, update or delete shape by a keyspace, unless it is qualified already.
+     *
+     * @param shapeCql the shape of the statement.
+     * @param keyspace the keyspace, as CQL.
+     * @return the qualified shape, or the shape as it is if its table could not be found.
+     */
+    static String qualify(String shapeCql, String keyspace) {
+        int length = shapeCql.length();
+        int i = skipWhitespace(shapeCql, 0);
+        int end = skipWord(shapeCql, i);
+        String keyword = shapeCql.substring(i, end).toUpperCase(Locale.ROOT);
+        i = skipWhitespace(shapeCql, end);
+        if (keyword.equals("INSERT")) {
+            end = skipWord(shapeCql, i);
+            if (!shapeCql.substring(i, end).equalsIgnoreCase("INTO")) {
+                return shapeCql;
+            }
+            i = skipWhitespace(shapeCql, end);
+        } else if (keyword.equals("DELETE")) {
+            // the columns deleted come before the table
+            while (true) {
+                if (i >= length) {
+                    return shapeCql;
+                }
+                char c = shapeCql.charAt(i);
+                if (c == '\'' || c == '"') {
+                    end = skipQuoted(shapeCql, i, c);
+                    if (end < 0) {
+                        return shapeCql;
+                    }
+                } else {
+                    end = Math.max(skipWord(shapeCql, i), i + 1);
+                }
+                boolean from = shapeCql.substring(i, end).equalsIgnoreCase("FROM");
+                i = skipWhitespace(shapeCql, end);
+                if (from) {
+                    break;
+                }
+            }
+        } else if (!keyword.equals("UPDATE")) {
+            return shapeCql;
+        }
+        end = i < length && shapeCql.charAt(i) == '"' ? skipQuoted(shapeCql, i, '"') : skipWord(shapeCql, i);
+        if (end <= i) {
+            return shapeCql;
+        }
+        int next = skipWhitespace(shapeCql, end);
+        if (next < length && shapeCql.charAt(next) == '.') {
+            return shapeCql;
+        }
+        return shapeCql.substring(0, i) + keyspace + "." + shapeCql.substring(i);
+    }
+
+    private static int skipWhitespace(String cql, int start) {
+        int i = start;
+        while (i < cql.length() && Character.isWhitespace(cql.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipWord(String cql, int start) {
+        int i = start;
+        while (i < cql.length() && (Character.isLetterOrDigit(cql.charAt(i)) || cql.charAt(i) == '_')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static void addLiteral(StringBuilder shape, String literal, int depth, List<String> literals) {
+        if (depth > 0) {
+            shape.append(literal);
+        } else {
+            shape.append('?');
+            literals.add(literal);
+        }
+    }
+
+    private static boolean isHexLetter(char c) {
+        return c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+    }
+
+    private static boolean isWordPart(String cql, int index) {
+        if (index < 0) {
+            return false;
+        }
+        char c = cql.charAt(index);
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+
+    private static Matcher match(String cql, int start, Pattern... patterns) {
+        for (Pattern pattern : patterns) {
+            Matcher matcher = pattern.matcher(cql).region(start, cql.length());
+            if (matcher.lookingAt()) {
+                return matcher;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the index after a quoted string or identifier, in which the quote is escaped by doubling it.
+     */
+    private static int skipQuoted(String cql, int start, char quote) {
+        for (int i = start + 1; i < cql.length(); i++) {
+            if (cql.charAt(i) == quote) {
+                if (i + 1 < cql.length() && cql.charAt(i + 1) == quote) {
+                    i++;
+                } else {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static final class Shape {
+        private final String cql;
+
+        private final PreparedStatement prepared;
+
+        private long hits;
+
+        private long misses;
+
+        private Shape(String cql, PreparedStatement prepared) {
+            this.cql = cql;
+            this.prepared = prepared;
+        }
+    }
+}
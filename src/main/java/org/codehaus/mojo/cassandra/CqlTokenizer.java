@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a CQL statement into words, numbers, quoted literals and identifiers, and single punctuation characters, so
+ * that the statement can be looked at without mistaking the content of a literal or comment for a keyword.
+ */
+final class CqlTokenizer {
+    private CqlTokenizer() {}
+
+    /**
+     * Splits a statement into tokens. Comments are dropped, string literals, quoted identifiers and {@code $$} blocks
+     * are single tokens keeping their quotes.
+     *
+     * @param statement the statement.
+     * @return the tokens, or {@code null} if a literal is not terminated.
+     */
+    static List<String> tokenize(String statement) {
+        List<String> tokens = new ArrayList<>();
+        int length = statement.length();
+        int i = 0;
+        while (i < length) {
+            char c = statement.charAt(i);
+            char next = i + 1 < length ? statement.charAt(i + 1) : 0;
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if ((c == '-' && next == '-') || (c == '/' && next == '/')) {
+                int end = statement.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+                continue;
+            }
+            if (c == '/' && next == '*') {
+                int end = statement.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                continue;
+            }
+            if (c == '\'' || c == '"') {
+                for (i++; i < length; i++) {
+                    if (statement.charAt(i) == c) {
+                        if (i + 1 < length && statement.charAt(i + 1) == c) {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                if (i >= length) {
+                    return null;
+                }
+                i++;
+            } else if (c == '$' && next == '$') {
+                int end = statement.indexOf("$$", i + 2);
+                if (end < 0) {
+                    return null;
+                }
+                i = end + 2;
+            } else if (Character.isLetterOrDigit(c) || c == '_') {
+                while (i < length && (Character.isLetterOrDigit(statement.charAt(i)) || statement.charAt(i) == '_')) {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+            tokens.add(statement.substring(start, i));
+        }
+        return tokens;
+    }
+}
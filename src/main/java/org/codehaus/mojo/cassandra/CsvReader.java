@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the records of comma separated values as of RFC 4180, one at a time. Fields may be quoted with {@code "},
+ * a quote in them being doubled, in which case they may hold commas and line breaks. A field that is empty and not
+ * quoted is read as {@code null}, so that {@code ""} stands for an empty string. Blank lines are skipped.
+ */
+final class CsvReader implements Closeable {
+    private final Reader reader;
+
+    private int lookahead = -2;
+
+    private long line = 1;
+
+    private long recordLine;
+
+    /**
+     * Creates a reader of records.
+     *
+     * @param reader the comma separated values, buffered by this reader.
+     */
+    CsvReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+    }
+
+    /**
+     * Returns the next record.
+     *
+     * @return the fields of the record, or {@code null} if there are no more records.
+     * @throws IOException if the values could not be read, or a quoted field is not terminated.
+     */
+    List<String> nextRecord() throws IOException {
+        int c = read();
+        while (c == '\r' || c == '\n') {
+            skipLineBreak(c);
+            c = read();
+        }
+        if (c < 0) {
+            return null;
+        }
+        recordLine = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        while (true) {
+            if (c == '"') {
+                readQuoted(field);
+                c = read();
+                // anything following the closing quote up to the separator is kept as it is
+                while (c >= 0 && c != ',' && c != '\r' && c != '\n') {
+                    field.append((char) c);
+                    c = read();
+                }
+                fields.add(field.toString());
+            } else {
+                while (c >= 0 && c != ',' && c != '\r' && c != '\n') {
+                    field.append((char) c);
+                    c = read();
+                }
+                fields.add(field.length() == 0 ? null : field.toString());
+            }
+            field.setLength(0);
+            if (c != ',') {
+                if (c >= 0) {
+                    skipLineBreak(c);
+                }
+                return fields;
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * Returns the line the last record read starts on.
+     *
+     * @return the line number, starting at 1.
+     */
+    long getRecordLine() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void readQuoted(StringBuilder field) throws IOException {
+        long start = line;
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                throw new IOException("Unterminated quoted field starting on line " + start);
+            }
+            if (c == '"') {
+                if (peek() != '"') {
+                    return;
+                }
+                c = read();
+            } else if (c == '\n' || c == '\r' && peek() != '\n') {
+                line++;
+            }
+            field.append((char) c);
+        }
+    }
+
+    /**
+     * Skips the rest of a line break, {@code \r\n} being one.
+     */
+    private void skipLineBreak(int c) throws IOException {
+        line++;
+        if (c == '\r' && peek() == '\n') {
+            read();
+        }
+    }
+
+    private int peek() throws IOException {
+        if (lookahead == -2) {
+            lookahead = reader.read();
+        }
+        return lookahead;
+    }
+
+    private int read() throws IOException {
+        if (lookahead != -2) {
+            int c = lookahead;
+            lookahead = -2;
+            return c;
+        }
+        return reader.read();
+    }
+}
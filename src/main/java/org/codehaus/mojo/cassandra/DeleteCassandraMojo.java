@@ -68,6 +68,7 @@ public class DeleteCassandraMojo extends AbstractMojo {
         }
         try {
             getLog().info("Deleting " + cassandraDir.getAbsolutePath());
+            Utils.deleteLinkedStorage(cassandraDir, getLog());
             FileUtils.deleteDirectory(cassandraDir);
         } catch (IOException e) {
             if (failOnError) {
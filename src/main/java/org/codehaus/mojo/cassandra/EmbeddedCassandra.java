@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Runs a Cassandra daemon inside the Maven JVM. The daemon is loaded in its own class loader, built from the same
+ * classpath as the forked {@code cassandra.jar}, whose parent is the platform class loader so that none of the
+ * Maven core or plugin classes leak into Cassandra.
+ */
+final class EmbeddedCassandra {
+    /**
+     * The running instances keyed by {@link #key(String, int)}, so that the {@code stop} goal can find them.
+     */
+    private static final Map<String, EmbeddedCassandra> INSTANCES = new ConcurrentHashMap<>();
+
+    private final URLClassLoader classLoader;
+
+    private final Object daemon;
+
+    private final Map<String, String> previousProperties;
+
+    private EmbeddedCassandra(URLClassLoader classLoader, Object daemon, Map<String, String> previousProperties) {
+        this.classLoader = classLoader;
+        this.daemon = daemon;
+        this.previousProperties = previousProperties;
+    }
+
+    /**
+     * Returns the key an embedded instance is registered under.
+     *
+     * @param stopAddress the address the instance would listen on for the stop command.
+     * @param stopPort    the port the instance would listen on for the stop command.
+     * @return the key.
+     */
+    static String key(String stopAddress, int stopPort) {
+        return stopAddress + ":" + stopPort;
+    }
+
+    /**
+     * Returns {@code true} if an embedded instance is registered under the supplied key.
+     *
+     * @param key the key.
+     * @return {@code true} if an embedded instance is registered under the supplied key.
+     */
+    static boolean isRunning(String key) {
+        return INSTANCES.containsKey(key);
+    }
+
+    /**
+     * Starts Cassandra in the Maven JVM and returns once it has finished starting.
+     *
+     * @param key              the key to register the instance under.
+     * @param classpath        the classpath to load Cassandra from.
+     * @param systemProperties the system properties Cassandra reads its configuration from.
+     * @param log              the log to write to.
+     * @throws MojoExecutionException if Cassandra could not be started.
+     */
+    static synchronized void start(String key, List<URL> classpath, Map<String, String> systemProperties, Log log)
+            throws MojoExecutionException {
+        if (INSTANCES.containsKey(key)) {
+            throw new MojoExecutionException("An embedded Cassandra instance is already running on " + key);
+        }
+        Map<String, String> previousProperties = new HashMap<>();
+        for (Map.Entry<String, String> entry : systemProperties.entrySet()) {
+            previousProperties.put(entry.getKey(), System.getProperty(entry.getKey()));
+            System.setProperty(entry.getKey(), entry.getValue());
+        }
+        URLClassLoader classLoader = new URLClassLoader(
+                classpath.toArray(new URL[0]),
+                ClassLoader.getSystemClassLoader().getParent());
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            log.debug("Activating embedded Cassandra with classpath " + classpath);
+            // a managed daemon throws instead of calling System.exit()
+            Object daemon = classLoader
+                    .loadClass("org.apache.cassandra.service.CassandraDaemon")
+                    .getConstructor(boolean.class)
+                    .newInstance(true);
+            daemon.getClass().getMethod("activate").invoke(daemon);
+            INSTANCES.put(key, new EmbeddedCassandra(classLoader, daemon, previousProperties));
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            restoreProperties(previousProperties);
+            closeClassLoader(classLoader, log);
+            throw new MojoExecutionException("Could not start embedded Cassandra", e);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    /**
+     * Stops the embedded instance registered under the supplied key, if any.
+     *
+     * @param key the key the instance is registered under.
+     * @param log the log to write to.
+     * @return {@code true} if there was an embedded instance to stop.
+     */
+    static synchronized boolean stop(String key, Log log) {
+        EmbeddedCassandra instance = INSTANCES.remove(key);
+        if (instance == null) {
+            return false;
+        }
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(instance.classLoader);
+        try {
+            // drain first, while the node is still fully up: it stops accepting clients, flushes the memtables and
+            // releases the storage port so that the node can be started again
+            Class<?> storageService = instance.classLoader.loadClass("org.apache.cassandra.service.StorageService");
+            Object storageServiceInstance = storageService.getField("instance").get(null);
+            storageService.getMethod("drain").invoke(storageServiceInstance);
+            instance.daemon.getClass().getMethod("deactivate").invoke(instance.daemon);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            log.warn("Embedded Cassandra did not stop cleanly: " + e.getLocalizedMessage());
+            log.debug(e);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+        unregisterMBeans(log);
+        restoreProperties(instance.previousProperties);
+        // releases the jar files, any background thread Cassandra leaves behind can only use the classes it has
+        // already loaded
+        closeClassLoader(instance.classLoader, log);
+        log.info("Embedded Cassandra has stopped.");
+        return true;
+    }
+
+    /**
+     * Removes the MBeans Cassandra registered on the platform MBean server, otherwise a later start in the same JVM
+     * would fail to register its own.
+     *
+     * @param log the log to write to.
+     */
+    private static void unregisterMBeans(Log log) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ObjectName name : server.queryNames(new ObjectName("org.apache.cassandra*:*"), null)) {
+                try {
+                    server.unregisterMBean(name);
+                } catch (Exception e) {
+                    log.debug("Could not unregister " + name, e);
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Could not query Cassandra MBeans", e);
+        }
+    }
+
+    private static void closeClassLoader(URLClassLoader classLoader, Log log) {
+        try {
+            classLoader.close();
+        } catch (IOException e) {
+            log.debug("Could not close the embedded Cassandra class loader", e);
+        }
+    }
+
+    private static void restoreProperties(Map<String, String> previousProperties) {
+        for (Map.Entry<String, String> entry : previousProperties.entrySet()) {
+            if (entry.getValue() == null) {
+                System.clearProperty(entry.getKey());
+            } else {
+                System.setProperty(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
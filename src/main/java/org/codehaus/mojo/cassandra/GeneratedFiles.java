@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * The manifest of the files generated in a Cassandra home, recording for each file a digest of the inputs it was
+ * generated from, so that a file is only generated again when its inputs change.
+ */
+final class GeneratedFiles {
+    private static final String MANIFEST = "generated.properties";
+
+    private final File cassandraDir;
+
+    private final Properties digests = new Properties();
+
+    private boolean changed;
+
+    private GeneratedFiles(File cassandraDir) {
+        this.cassandraDir = cassandraDir;
+    }
+
+    /**
+     * Reads the manifest of a Cassandra home, an unreadable manifest counts as empty.
+     *
+     * @param cassandraDir the Cassandra home.
+     * @return the manifest.
+     */
+    static GeneratedFiles load(File cassandraDir) {
+        GeneratedFiles result = new GeneratedFiles(cassandraDir);
+        File manifest = new File(cassandraDir, MANIFEST);
+        if (manifest.isFile()) {
+            try (InputStream in = Files.newInputStream(manifest.toPath())) {
+                result.digests.load(in);
+            } catch (IOException e) {
+                result.digests.clear();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@code true} if the file exists and was generated from inputs with the given digest.
+     *
+     * @param file   the generated file.
+     * @param digest the digest of the inputs the file would be generated from now.
+     * @return {@code true} if the file is up to date.
+     */
+    boolean isCurrent(File file, String digest) {
+        return file.isFile() && digest.equals(digests.getProperty(key(file)));
+    }
+
+    /**
+     * Records that the file was generated from inputs with the given digest.
+     *
+     * @param file   the generated file.
+     * @param digest the digest of its inputs.
+     */
+    void record(File file, String digest) {
+        digests.setProperty(key(file), digest);
+        changed = true;
+    }
+
+    /**
+     * Writes the manifest if anything was recorded.
+     *
+     * @throws IOException if the manifest could not be written.
+     */
+    void store() throws IOException {
+        if (!changed) {
+            return;
+        }
+        try (OutputStream out = Files.newOutputStream(new File(cassandraDir, MANIFEST).toPath())) {
+            digests.store(out, "Digests of the inputs of the files generated by cassandra-maven-plugin");
+        }
+        changed = false;
+    }
+
+    private String key(File file) {
+        return cassandraDir.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+    }
+}
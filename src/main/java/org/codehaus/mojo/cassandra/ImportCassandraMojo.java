@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BoundStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Imports the rows of a CSV or JSON Lines file into a table, the way {@code COPY FROM} of cqlsh does. The rows are
+ * parsed by a pool of threads against the columns of the table and written with a prepared statement, with a bounded
+ * number of writes in flight. The values of a CSV row are bound one by one, so the driver knows the partition key of
+ * the write and sends it to a replica of its partition when importing into a cluster. A JSON Lines row is bound as a
+ * single JSON value the driver cannot read the key from, so its write goes to any node, which forwards it.
+ */
+@Mojo(name = "import", threadSafe = true, defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST)
+public class ImportCassandraMojo extends AbstractImportMojo {
+    /**
+     * The maximum number of writes in flight.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.maxInFlight", defaultValue = "128")
+    protected int maxInFlight = 128;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        boolean jsonLines = checkImportParameters();
+        ImportOperation operation = new ImportOperation(jsonLines);
+        operation.setMavenSession(session);
+        Utils.executeCql(operation);
+        if (operation.failure != null) {
+            throw new MojoExecutionException(
+                    "Could not import " + file + ": " + operation.failure.getMessage(), operation.failure);
+        }
+    }
+
+    private class ImportOperation extends CqlOperation {
+        private final boolean jsonLines;
+
+        private Exception failure;
+
+        private ImportOperation(boolean jsonLines) {
+            super(rpcAddress, nativeTransportPort);
+            this.jsonLines = jsonLines;
+        }
+
+        @Override
+        void executeOperation(CqlSession cqlSession) throws CqlExecutionException {
+            TableMetadata tableMetadata = findTable(cqlSession);
+            CqlPipeline pipeline = new CqlPipeline(cqlSession, maxInFlight, null, null, getLog());
+            long start = System.nanoTime();
+            long rows;
+            try (ImportFile importFile = new ImportFile(
+                    tableMetadata,
+                    jsonLines,
+                    cqlSession.getContext().getCodecRegistry(),
+                    cqlSession.getContext().getProtocolVersion())) {
+                PreparedStatement insert = cqlSession.prepare(importFile.getInsert());
+                rows = importFile.copyTo((values, line) -> {
+                    BoundStatementBuilder builder = insert.boundStatementBuilder();
+                    for (int i = 0; i < values.length; i++) {
+                        if (values[i] != null) {
+                            builder.setBytesUnsafe(i, values[i]);
+                        }
+                    }
+                    pipeline.send(builder.build(), () -> "the row on line " + line);
+                });
+            } catch (IOException | RuntimeException e) {
+                // an unreadable file, an unknown column, a row that does not parse or a write that failed
+                failure = e;
+                try {
+                    pipeline.drain();
+                } catch (CqlExecutionException ignored) {
+                    // the first failure is the one reported
+                }
+                return;
+            }
+            pipeline.drain();
+            long elapsed = System.nanoTime() - start;
+            getLog().info("Imported " + rows + " row(s) into " + describe(tableMetadata) + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms (" + rate(rows, elapsed) + " rows/s)");
+        }
+    }
+}
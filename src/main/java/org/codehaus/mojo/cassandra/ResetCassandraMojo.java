@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Clears the data of a running Cassandra instance without restarting it, by truncating or dropping every keyspace
+ * that is not a system keyspace, and optionally runs the load script again.
+ */
+@Mojo(name = "reset", threadSafe = true, defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST)
+public class ResetCassandraMojo extends AbstractCqlLoadMojo {
+    /**
+     * Truncate and drop are not bound by the driver's default request timeout, they may have to flush first.
+     */
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    /**
+     * How to clear the keyspaces: {@code truncate} empties their tables and keeps the schema, {@code drop} drops the
+     * keyspaces, usually together with {@code reload}.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.resetMode", defaultValue = "truncate")
+    protected String resetMode;
+
+    /**
+     * Whether to run the load script again once the keyspaces have been cleared.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.reload", defaultValue = "false")
+    protected boolean reload;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        boolean drop = "drop".equalsIgnoreCase(resetMode);
+        if (!drop && !"truncate".equalsIgnoreCase(resetMode)) {
+            throw new MojoExecutionException("Unknown reset mode: " + resetMode + ", use truncate or drop");
+        }
+        long timeStamp = System.currentTimeMillis();
+        ResetOperation operation = new ResetOperation(drop);
+        operation.setMavenSession(session);
+        Utils.executeCql(operation);
+        if (operation.autoSnapshot && !operation.keyspaces.isEmpty()) {
+            // the snapshots taken by truncate and drop are only hard links, but they keep the data on disk
+            Utils.clearSnapshots(rpcAddress, jmxPort, drop ? "dropped-" : "truncated-", getLog());
+        }
+        getLog().info((drop ? "Dropped " : "Truncated ") + operation.keyspaces.size() + " keyspace(s) in "
+                + (System.currentTimeMillis() - timeStamp) + "ms");
+        if (reload) {
+            execCqlFile();
+        }
+    }
+
+    private class ResetOperation extends CqlOperation {
+        private final boolean drop;
+
+        private final List<String> keyspaces = new ArrayList<>();
+
+        private boolean autoSnapshot = true;
+
+        private ResetOperation(boolean drop) {
+            super(rpcAddress, nativeTransportPort);
+            this.drop = drop;
+        }
+
+        @Override
+        void executeOperation(CqlSession cqlSession) throws CqlExecutionException {
+            try {
+                for (Row row : cqlSession.execute("SELECT keyspace_name FROM system_schema.keyspaces")) {
+                    String name = row.getString(0);
+                    if (!Utils.SYSTEM_KEYSPACES.contains(name)) {
+                        keyspaces.add(name);
+                    }
+                }
+                autoSnapshot = isAutoSnapshot(cqlSession);
+                List<CompletableFuture<?>> pending = new ArrayList<>();
+                if (drop) {
+                    for (String name : keyspaces) {
+                        pending.add(execute(cqlSession, "DROP KEYSPACE IF EXISTS " + quote(name)));
+                    }
+                } else {
+                    for (Row row : cqlSession.execute("SELECT keyspace_name, table_name FROM system_schema.tables")) {
+                        if (keyspaces.contains(row.getString(0))) {
+                            pending.add(execute(
+                                    cqlSession,
+                                    "TRUNCATE TABLE " + quote(row.getString(0)) + "." + quote(row.getString(1))));
+                        }
+                    }
+                }
+                CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]))
+                        .join();
+            } catch (CompletionException e) {
+                throw new CqlExecutionException(e.getCause());
+            } catch (Exception e) {
+                throw new CqlExecutionException(e);
+            }
+        }
+
+        private CompletableFuture<?> execute(CqlSession cqlSession, String statement) {
+            getLog().debug("Executing cql statement: " + statement);
+            return cqlSession
+                    .executeAsync(SimpleStatement.newInstance(statement).setTimeout(TIMEOUT))
+                    .toCompletableFuture();
+        }
+
+        private boolean isAutoSnapshot(CqlSession cqlSession) {
+            try {
+                Row row = cqlSession
+                        .execute("SELECT value FROM system_views.settings WHERE name = 'auto_snapshot'")
+                        .one();
+                return row == null || Boolean.parseBoolean(row.getString(0));
+            } catch (Exception e) {
+                // the settings table only exists from Cassandra 4.0 on
+                return true;
+            }
+        }
+
+        private String quote(String name) {
+            return CqlIdentifier.fromInternal(name).asCql(true);
+        }
+    }
+}
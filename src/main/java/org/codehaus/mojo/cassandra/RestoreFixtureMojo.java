@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Restores a fixture captured by {@code snapshot-fixture} into a running Cassandra instance. Keyspaces and tables that
+ * do not exist are created from the fixture's schema, the tables that do are truncated, and the SSTables are hard
+ * linked into a staging directory and imported, so that no data goes through CQL.
+ */
+@Mojo(name = "restore-fixture", threadSafe = true)
+public class RestoreFixtureMojo extends AbstractFixtureMojo {
+    /**
+     * Truncate and schema changes are not bound by the driver's default request timeout.
+     */
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    private static final String IDENTIFIER = "(\"(?:[^\"]|\"\")+\"|\\w+)";
+
+    /**
+     * Matches the statements creating a table or materialized view, the table is the second group.
+     */
+    private static final Pattern CREATE_TABLE = Pattern.compile(
+            "CREATE\\s+(?:TABLE|MATERIALIZED\\s+VIEW)\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?(?:" + IDENTIFIER + "\\s*\\.\\s*)?"
+                    + IDENTIFIER,
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Matches the statements creating an index, the indexed table is the third group.
+     */
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+            "CREATE\\s+(?:CUSTOM\\s+)?INDEX\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?(?:" + IDENTIFIER + "\\s+)?ON\\s+(?:"
+                    + IDENTIFIER + "\\s*\\.\\s*)?" + IDENTIFIER,
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        long timeStamp = System.currentTimeMillis();
+        File fixtureDir = getFixtureDir();
+        File[] keyspaceDirs = fixtureDir.listFiles(File::isDirectory);
+        if (keyspaceDirs == null) {
+            throw new MojoExecutionException("Fixture " + fixture + " not found in " + fixtureDirectory);
+        }
+        PrepareOperation operation = new PrepareOperation(keyspaceDirs);
+        operation.setMavenSession(session);
+        Utils.executeCql(operation);
+        if (operation.truncated) {
+            Utils.clearSnapshots(rpcAddress, jmxPort, "truncated-", getLog());
+        }
+        File staging = new File(cassandraDir, "fixture-import");
+        int files = 0;
+        try (JMXConnector connector = Utils.connectJmx(rpcAddress, jmxPort)) {
+            MBeanServerConnection connection = connector.getMBeanServerConnection();
+            for (File keyspaceDir : keyspaceDirs) {
+                for (File tableDir : listTables(keyspaceDir)) {
+                    File tableStaging = new File(new File(staging, keyspaceDir.getName()), tableDir.getName());
+                    int linked = Utils.linkFiles(tableDir, tableStaging);
+                    if (linked == 0) {
+                        continue;
+                    }
+                    files += linked;
+                    importTable(connection, keyspaceDir.getName(), tableDir.getName(), tableStaging);
+                }
+            }
+        } catch (IOException | JMException e) {
+            throw new MojoExecutionException(
+                    "Could not restore fixture " + fixture + ": " + e.getLocalizedMessage(), e);
+        } finally {
+            try {
+                FileUtils.deleteDirectory(staging);
+            } catch (IOException e) {
+                getLog().warn("Could not delete " + staging + ": " + e.getLocalizedMessage());
+            }
+        }
+        getLog().info("Restored fixture " + fixture + " with " + files + " file(s) of " + keyspaceDirs.length
+                + " keyspace(s) in " + (System.currentTimeMillis() - timeStamp) + "ms");
+    }
+
+    /**
+     * Imports the SSTables of a table, which moves them out of the staging directory into the table's directory.
+     *
+     * @param connection the JMX connection.
+     * @param keyspace   the keyspace.
+     * @param table      the table.
+     * @param staging    the directory holding the SSTables.
+     * @throws IOException            if the node could not be reached.
+     * @throws JMException            if the import could not be invoked.
+     * @throws MojoExecutionException if the import failed.
+     */
+    private void importTable(MBeanServerConnection connection, String keyspace, String table, File staging)
+            throws IOException, JMException, MojoExecutionException {
+        getLog().debug("Importing " + staging + " into " + keyspace + "." + table);
+        // the capture made the verification unnecessary
+        Utils.importSSTables(connection, keyspace, table, Collections.singleton(staging.getAbsolutePath()));
+    }
+
+    /**
+     * Reads the statements of the schema of a keyspace of the fixture.
+     *
+     * @param keyspaceDir the directory of the keyspace in the fixture.
+     * @return the statements, or {@code null} if the fixture holds no schema for the keyspace.
+     * @throws IOException if the schema could not be read.
+     */
+    private static List<String> readSchema(File keyspaceDir) throws IOException {
+        File schema = new File(keyspaceDir, SCHEMA_FILE);
+        if (!schema.isFile()) {
+            return null;
+        }
+        List<String> statements = new ArrayList<>();
+        try (CqlScriptReader reader =
+                new CqlScriptReader(new InputStreamReader(new FileInputStream(schema), StandardCharsets.UTF_8))) {
+            for (String statement = reader.nextStatement(); statement != null; statement = reader.nextStatement()) {
+                statements.add(statement);
+            }
+        }
+        return statements;
+    }
+
+    private static String internal(String name) {
+        return CqlIdentifier.fromCql(name).asInternal();
+    }
+
+    private static File[] listTables(File keyspaceDir) {
+        File[] tableDirs = keyspaceDir.listFiles(File::isDirectory);
+        return tableDirs == null ? new File[0] : tableDirs;
+    }
+
+    private class PrepareOperation extends CqlOperation {
+        private final File[] keyspaceDirs;
+
+        private boolean truncated;
+
+        private PrepareOperation(File[] keyspaceDirs) {
+            super(rpcAddress, nativeTransportPort);
+            this.keyspaceDirs = keyspaceDirs;
+            // a USE statement in a schema script switches the keyspace of the whole session
+            setExclusive(issuesUse(keyspaceDirs));
+        }
+
+        private boolean issuesUse(File[] keyspaceDirs) {
+            for (File keyspaceDir : keyspaceDirs) {
+                try {
+                    List<String> statements = readSchema(keyspaceDir);
+                    if (statements != null && statements.stream().anyMatch(CqlPipeline::isUse)) {
+                        return true;
+                    }
+                } catch (IOException e) {
+                    // reported once the schema is read again to run it
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        void executeOperation(CqlSession cqlSession) throws CqlExecutionException {
+            try {
+                Set<String> existing = new HashSet<>();
+                for (Row row : cqlSession.execute("SELECT keyspace_name FROM system_schema.keyspaces")) {
+                    existing.add(row.getString(0));
+                }
+                // the schema is brought up to date before anything is truncated, a fixture that cannot be restored
+                // leaves the data alone
+                List<File> truncate = new ArrayList<>();
+                for (File keyspaceDir : keyspaceDirs) {
+                    if (!existing.contains(keyspaceDir.getName())) {
+                        createKeyspace(cqlSession, keyspaceDir);
+                    } else {
+                        truncate.addAll(createMissingTables(cqlSession, keyspaceDir));
+                    }
+                }
+                List<CompletableFuture<?>> pending = new ArrayList<>();
+                for (File tableDir : truncate) {
+                    String statement = "TRUNCATE TABLE "
+                            + quote(tableDir.getParentFile().getName()) + "." + quote(tableDir.getName());
+                    getLog().debug("Executing cql statement: " + statement);
+                    pending.add(cqlSession
+                            .executeAsync(SimpleStatement.newInstance(statement).setTimeout(TIMEOUT))
+                            .toCompletableFuture());
+                    truncated = true;
+                }
+                CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]))
+                        .join();
+            } catch (CompletionException e) {
+                throw new CqlExecutionException(e.getCause());
+            } catch (Exception e) {
+                throw new CqlExecutionException(e);
+            }
+        }
+
+        private void createKeyspace(CqlSession cqlSession, File keyspaceDir) throws IOException {
+            List<String> statements = readSchema(keyspaceDir);
+            if (statements == null) {
+                throw new IOException("Keyspace " + keyspaceDir.getName() + " does not exist and "
+                        + new File(keyspaceDir, SCHEMA_FILE) + " is missing");
+            }
+            for (String statement : statements) {
+                execute(cqlSession, statement);
+            }
+        }
+
+        /**
+         * Creates the tables of the fixture that an existing keyspace lacks, together with their indexes.
+         *
+         * @param cqlSession  the session.
+         * @param keyspaceDir the directory of the keyspace in the fixture.
+         * @return the directories of the tables that already existed.
+         * @throws IOException if a table is missing and the fixture's schema does not create it.
+         */
+        private List<File> createMissingTables(CqlSession cqlSession, File keyspaceDir) throws IOException {
+            String keyspace = keyspaceDir.getName();
+            Set<String> tables = new HashSet<>();
+            for (String query : new String[] {
+                "SELECT table_name FROM system_schema.tables WHERE keyspace_name = ?",
+                "SELECT view_name FROM system_schema.views WHERE keyspace_name = ?"
+            }) {
+                for (Row row : cqlSession.execute(query, keyspace)) {
+                    tables.add(row.getString(0));
+                }
+            }
+            List<File> existing = new ArrayList<>();
+            Set<String> missing = new HashSet<>();
+            for (File tableDir : listTables(keyspaceDir)) {
+                if (tables.contains(tableDir.getName())) {
+                    existing.add(tableDir);
+                } else {
+                    missing.add(tableDir.getName());
+                }
+            }
+            if (missing.isEmpty()) {
+                return existing;
+            }
+            List<String> statements = readSchema(keyspaceDir);
+            Set<String> created = new HashSet<>();
+            for (String statement : statements == null ? Collections.<String>emptyList() : statements) {
+                Matcher table = CREATE_TABLE.matcher(statement);
+                Matcher index = CREATE_INDEX.matcher(statement);
+                if (table.lookingAt() && missing.contains(internal(table.group(2)))) {
+                    execute(cqlSession, statement);
+                    created.add(internal(table.group(2)));
+                } else if (index.lookingAt() && missing.contains(internal(index.group(3)))) {
+                    execute(cqlSession, statement);
+                }
+            }
+            missing.removeAll(created);
+            if (!missing.isEmpty()) {
+                throw new IOException("Table(s) " + missing + " do not exist in keyspace " + keyspace + " and "
+                        + new File(keyspaceDir, SCHEMA_FILE) + " does not create them");
+            }
+            return existing;
+        }
+
+        private void execute(CqlSession cqlSession, String statement) {
+            getLog().debug("Executing cql statement: " + statement);
+            cqlSession.execute(SimpleStatement.newInstance(statement).setTimeout(TIMEOUT));
+        }
+    }
+}
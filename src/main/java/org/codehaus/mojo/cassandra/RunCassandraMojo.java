@@ -18,6 +18,7 @@
  */
 package org.codehaus.mojo.cassandra;
 
+import java.io.File;
 import java.io.IOException;
 
 import org.apache.commons.exec.DefaultExecuteResultHandler;
@@ -66,15 +67,30 @@ public class RunCassandraMojo extends AbstractCqlLoadMojo {
             return;
         }
         long timeStamp = System.currentTimeMillis();
-        boolean isClean = !cassandraDir.isDirectory();
+        // memory storage does not survive a stop
+        boolean isClean = !cassandraDir.isDirectory() || isMemoryStorage() && !new File(cassandraDir, "data").exists();
         getLog().debug((isClean ? "First start of Cassandra instance in " : "Re-using existing Cassandra instance in ")
                 + cassandraDir.getAbsolutePath());
         try {
+            prepareStorage(cassandraDir);
             DefaultExecuteResultHandler execHandler = Utils.startCassandraServer(
                     cassandraDir, newServiceCommandLine(), createEnvironmentVars(), getLog());
             try {
                 getLog().info("Waiting for Cassandra to start...");
-                Utils.waitUntilStarted(rpcAddress, nativeTransportPort, 0, getLog());
+                if (Utils.waitUntilStarted(
+                                rpcAddress,
+                                nativeTransportPort,
+                                jmxPort,
+                                listenAddress,
+                                stopPort,
+                                stopKey,
+                                0,
+                                execHandler,
+                                getLog())
+                        != Utils.Startup.STARTED) {
+                    throw new MojoFailureException(
+                            "Cassandra exited before it finished starting, see its output for the cause");
+                }
 
                 if (isClean && loadAfterFirstStart) {
                     execCqlFile();
@@ -90,12 +106,14 @@ public class RunCassandraMojo extends AbstractCqlLoadMojo {
                     // ignore
                 }
             } finally {
-                Utils.stopCassandraServer(rpcAddress, nativeTransportPort, listenAddress, stopPort, stopKey, getLog());
+                Utils.stopCassandraServer(
+                        rpcAddress, nativeTransportPort, jmxPort, listenAddress, stopPort, stopKey, getLog());
                 try {
                     execHandler.waitFor();
                 } catch (InterruptedException e) {
                     // ignore
                 }
+                Utils.deleteLinkedStorage(cassandraDir, getLog());
             }
         } catch (IOException e) {
             throw new MojoExecutionException(e.getLocalizedMessage(), e);
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Captures the SSTables and schema of keyspaces of a running Cassandra instance as a fixture, which
+ * {@code restore-fixture} can put back far faster than the statements that created the data. The SSTables are taken
+ * from a snapshot and hard linked into the fixture, so capturing costs a flush and no copying.
+ */
+@Mojo(name = "snapshot-fixture", threadSafe = true)
+public class SnapshotFixtureMojo extends AbstractFixtureMojo {
+    /**
+     * The comma-delimited keyspaces to capture. If not specified, all keyspaces but the system ones are captured.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.fixtureKeyspaces")
+    protected String fixtureKeyspaces;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        long timeStamp = System.currentTimeMillis();
+        DescribeOperation operation = new DescribeOperation();
+        operation.setMavenSession(session);
+        Utils.executeCql(operation);
+        if (operation.schemas.isEmpty()) {
+            getLog().warn("No keyspaces to capture. Nothing to do.");
+            return;
+        }
+        File fixtureDir = getFixtureDir();
+        String tag = "fixture-" + fixture + "-" + timeStamp;
+        String[] keyspaces = operation.schemas.keySet().toArray(new String[0]);
+        int files = 0;
+        try (JMXConnector connector = Utils.connectJmx(rpcAddress, jmxPort)) {
+            FileUtils.deleteDirectory(fixtureDir);
+            MBeanServerConnection connection = connector.getMBeanServerConnection();
+            ObjectName storageService = new ObjectName(Utils.STORAGE_SERVICE_MBEAN);
+            // flushes the memtables first
+            connection.invoke(
+                    storageService,
+                    "takeSnapshot",
+                    new Object[] {tag, new HashMap<String, String>(), keyspaces},
+                    new String[] {String.class.getName(), Map.class.getName(), String[].class.getName()});
+            try {
+                for (String keyspace : keyspaces) {
+                    files += linkSnapshot(keyspace, tag, new File(fixtureDir, keyspace));
+                    FileUtils.fileWrite(
+                            new File(new File(fixtureDir, keyspace), SCHEMA_FILE).getAbsolutePath(),
+                            "UTF-8",
+                            operation.schemas.get(keyspace));
+                }
+            } finally {
+                connection.invoke(storageService, "clearSnapshot", new Object[] {tag, keyspaces}, new String[] {
+                    String.class.getName(), String[].class.getName()
+                });
+            }
+        } catch (IOException | JMException e) {
+            throw new MojoExecutionException(
+                    "Could not capture fixture " + fixture + ": " + e.getLocalizedMessage(), e);
+        }
+        getLog().info("Captured fixture " + fixture + " with " + files + " file(s) of " + keyspaces.length
+                + " keyspace(s) in " + (System.currentTimeMillis() - timeStamp) + "ms");
+    }
+
+    /**
+     * Links the SSTables of the snapshot of a keyspace into the fixture.
+     *
+     * @param keyspace  the keyspace.
+     * @param tag       the tag of the snapshot.
+     * @param target    the directory of the keyspace in the fixture.
+     * @return the number of files linked.
+     * @throws IOException if the files could not be linked.
+     */
+    private int linkSnapshot(String keyspace, String tag, File target) throws IOException {
+        File[] tableDirs = new File(new File(cassandraDir, "data"), keyspace).listFiles(File::isDirectory);
+        int files = 0;
+        for (File tableDir : tableDirs == null ? new File[0] : tableDirs) {
+            File snapshot = new File(new File(tableDir, "snapshots"), tag);
+            if (!snapshot.isDirectory()) {
+                // the directory of a dropped incarnation of the table
+                continue;
+            }
+            String table = tableDir.getName().substring(0, tableDir.getName().lastIndexOf('-'));
+            File tableTarget = new File(target, table);
+            Utils.linkFiles(snapshot, tableTarget);
+            // the snapshot's own description of itself, the import would take them for SSTables
+            FileUtils.fileDelete(new File(tableTarget, "manifest.json").getAbsolutePath());
+            FileUtils.fileDelete(new File(tableTarget, "schema.cql").getAbsolutePath());
+            files += tableTarget.list().length;
+        }
+        return files;
+    }
+
+    private class DescribeOperation extends CqlOperation {
+        private final Map<String, String> schemas = new LinkedHashMap<>();
+
+        private DescribeOperation() {
+            super(rpcAddress, nativeTransportPort);
+        }
+
+        @Override
+        void executeOperation(CqlSession cqlSession) throws CqlExecutionException {
+            try {
+                List<String> keyspaces = new ArrayList<>();
+                if (StringUtils.isNotBlank(fixtureKeyspaces)) {
+                    for (String keyspace : StringUtils.split(fixtureKeyspaces, ",")) {
+                        keyspaces.add(keyspace.trim());
+                    }
+                } else {
+                    for (Row row : cqlSession.execute("SELECT keyspace_name FROM system_schema.keyspaces")) {
+                        if (!Utils.SYSTEM_KEYSPACES.contains(row.getString(0))) {
+                            keyspaces.add(row.getString(0));
+                        }
+                    }
+                }
+                for (String keyspace : keyspaces) {
+                    StringBuilder schema = new StringBuilder();
+                    for (Row row : cqlSession.execute("DESCRIBE KEYSPACE " + quote(keyspace))) {
+                        String statement = row.getString("create_statement").trim();
+                        schema.append(statement).append(statement.endsWith(";") ? "\n" : ";\n");
+                    }
+                    schemas.put(keyspace, schema.toString());
+                }
+            } catch (Exception e) {
+                throw new CqlExecutionException(e);
+            }
+        }
+    }
+}
@@ -21,8 +21,18 @@ package org.codehaus.mojo.cassandra;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.exec.DefaultExecuteResultHandler;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -75,6 +85,16 @@ public class StartCassandraClusterMojo extends AbstractCqlLoadMojo {
     @Parameter(property = "cassandra.cluster.size", defaultValue = "4")
     private int clusterSize;
 
+    /**
+     * The number of nodes to launch at the same time. Each batch of nodes is waited for before the next one is
+     * launched, which limits the load on the build agent while the nodes boot. A value of 0 launches all the nodes at
+     * once.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.cluster.startConcurrency", defaultValue = "0")
+    private int clusterStartConcurrency;
+
     /**
      * If <code>true</code>, the java options --add-exports and --add-opens will be added to the cassandra start. Which
      * is needed, if cassandra runs with a Java runtime &gt;= 11
@@ -84,6 +104,11 @@ public class StartCassandraClusterMojo extends AbstractCqlLoadMojo {
     @Parameter(property = "cassandra.addJdk11Options", defaultValue = "false")
     protected boolean addJdk11Options;
 
+    @Override
+    protected int getNodeCount() {
+        return clusterSize;
+    }
+
     @Override
     protected boolean useJdk11Options() {
         return addJdk11Options;
@@ -111,13 +136,19 @@ public class StartCassandraClusterMojo extends AbstractCqlLoadMojo {
         boolean isClean = true;
         for (int node = 0; node < clusterSize; node++) {
             listenAddress[node] = "127.0.0." + (node + 1);
+            // evenly spaced over the Murmur3Partitioner range, ending the last node on Long.MAX_VALUE as
+            // Long.MIN_VALUE is the reserved minimum token no node may own
             initialToken[node] = BigInteger.valueOf(2)
-                    .pow(127)
-                    .multiply(BigInteger.valueOf(node))
-                    .divide(BigInteger.valueOf(clusterSize));
+                    .pow(64)
+                    .multiply(BigInteger.valueOf(node + 1))
+                    .divide(BigInteger.valueOf(clusterSize))
+                    .add(BigInteger.valueOf(Long.MIN_VALUE))
+                    .subtract(BigInteger.ONE);
             cassandraDir[node] =
                     new File(this.cassandraDir.getParent(), this.cassandraDir.getName() + "-node" + (node + 1));
-            if (isClean && cassandraDir[node].isDirectory()) {
+            if (isClean
+                    && cassandraDir[node].isDirectory()
+                    && (!isMemoryStorage() || new File(cassandraDir[node], "data").exists())) {
                 getLog().debug("Re-using existing Cassandra cluster in " + cassandraDir[node].getAbsolutePath());
                 isClean = false;
             }
@@ -126,38 +157,35 @@ public class StartCassandraClusterMojo extends AbstractCqlLoadMojo {
         if (isClean) {
             getLog().debug("First start of Cassandra cluster in " + Arrays.asList(cassandraDir));
         }
+        // all the nodes share one deadline, however many batches they are launched in
+        long deadline = startWaitSeconds > 0 ? timeStamp + TimeUnit.SECONDS.toMillis(startWaitSeconds) : Long.MAX_VALUE;
+        int batchSize = clusterStartConcurrency < 1 || startWaitSeconds < 0 ? clusterSize : clusterStartConcurrency;
+        long[] launched = new long[clusterSize];
+        DefaultExecuteResultHandler[] execHandlers = new DefaultExecuteResultHandler[clusterSize];
         try {
-            for (int node = 0; node < clusterSize; node++) {
-                getLog().info("Starting for Cassandra Node " + (node + 1) + "...");
-                Utils.startCassandraServer(
-                        cassandraDir[node],
-                        newServiceCommandLine(
-                                cassandraDir[node],
-                                listenAddress[node],
-                                listenAddress[node],
-                                initialToken[node],
-                                listenAddress,
-                                node == 0,
-                                node == 0 ? jmxPort : 0),
-                        createEnvironmentVars(),
-                        getLog());
+            for (File dir : cassandraDir) {
+                prepareStorage(dir);
             }
-
-            if (startWaitSeconds >= 0) {
-                for (int node = 0; node < clusterSize; node++) {
-                    getLog().info("Waiting for Cassandra Node " + (node + 1) + " to start...");
-                    boolean started = Utils.waitUntilStarted(
-                            listenAddress[node], nativeTransportPort, startWaitSeconds, getLog());
-                    if (!started) {
-                        Utils.stopCassandraServer(
-                                listenAddress[node],
-                                nativeTransportPort,
-                                listenAddress[node],
-                                stopPort,
-                                stopKey,
-                                getLog());
-                        throw new MojoFailureException("Cassandra failed to start within " + startWaitSeconds + "s");
-                    }
+            for (int first = 0; first < clusterSize; first += batchSize) {
+                int last = Math.min(clusterSize, first + batchSize);
+                for (int node = first; node < last; node++) {
+                    getLog().info("Starting for Cassandra Node " + (node + 1) + "...");
+                    launched[node] = System.currentTimeMillis();
+                    execHandlers[node] = Utils.startCassandraServer(
+                            cassandraDir[node],
+                            newServiceCommandLine(
+                                    cassandraDir[node],
+                                    listenAddress[node],
+                                    listenAddress[node],
+                                    initialToken[node],
+                                    listenAddress,
+                                    node == 0,
+                                    node == 0 ? jmxPort : 0),
+                            createEnvironmentVars(),
+                            getLog());
+                }
+                if (startWaitSeconds >= 0) {
+                    waitUntilStarted(listenAddress, first, last, launched, execHandlers, deadline);
                 }
             }
             if (isClean && loadAfterFirstStart) {
@@ -169,4 +197,112 @@ public class StartCassandraClusterMojo extends AbstractCqlLoadMojo {
             throw new MojoExecutionException(e.getLocalizedMessage(), e);
         }
     }
+
+    /**
+     * Waits for a batch of nodes to start, all at the same time, and stops the whole cluster if any of them does not.
+     *
+     * @param listenAddress the listen addresses of all the nodes.
+     * @param first         the index of the first node of the batch.
+     * @param last          the index after the last node of the batch.
+     * @param launched      when each node was launched.
+     * @param execHandlers  the handlers of the processes of the nodes.
+     * @param deadline      when to stop waiting, or {@link Long#MAX_VALUE} to wait indefinitely.
+     * @throws MojoExecutionException if something went wrong.
+     * @throws MojoFailureException   if any of the nodes exited or did not start in time.
+     */
+    private void waitUntilStarted(
+            String[] listenAddress,
+            int first,
+            int last,
+            long[] launched,
+            DefaultExecuteResultHandler[] execHandlers,
+            long deadline)
+            throws MojoExecutionException, MojoFailureException {
+        getLog().info("Waiting for Cassandra Node" + (last - first > 1 ? "s " + (first + 1) + " to " : " ") + last
+                + " to start...");
+        ExecutorService executor = Executors.newFixedThreadPool(last - first);
+        List<Integer> exited = new ArrayList<>();
+        List<Integer> timedOut = new ArrayList<>();
+        try {
+            Map<Integer, Future<Utils.Startup>> started = new LinkedHashMap<>();
+            long[] ready = new long[last];
+            for (int node = first; node < last; node++) {
+                final int index = node;
+                final String address = listenAddress[node];
+                final int nodeJmxPort = node == 0 ? jmxPort : 0;
+                started.put(node, executor.submit(() -> {
+                    Utils.Startup startup = Utils.waitUntilStarted(
+                            address,
+                            nativeTransportPort,
+                            nodeJmxPort,
+                            address,
+                            stopPort,
+                            stopKey,
+                            remainingSeconds(deadline),
+                            execHandlers[index],
+                            getLog());
+                    ready[index] = System.currentTimeMillis();
+                    return startup;
+                }));
+            }
+            for (Map.Entry<Integer, Future<Utils.Startup>> entry : started.entrySet()) {
+                int node = entry.getKey();
+                Utils.Startup startup = entry.getValue().get();
+                if (startup == Utils.Startup.EXITED) {
+                    exited.add(node + 1);
+                } else if (startup == Utils.Startup.TIMED_OUT) {
+                    timedOut.add(node + 1);
+                } else {
+                    getLog().info("Cassandra Node " + (node + 1) + " started in "
+                            + ((ready[node] - launched[node]) / 100L) / 10.0 + "s");
+                }
+            }
+        } catch (ExecutionException e) {
+            stopCluster(listenAddress, last);
+            throw new MojoExecutionException(e.getCause().getLocalizedMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopCluster(listenAddress, last);
+            throw new MojoExecutionException("Interrupted while waiting for Cassandra to start", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (!exited.isEmpty()) {
+            stopCluster(listenAddress, last);
+            throw new MojoFailureException("Cassandra Node" + (exited.size() > 1 ? "s " : " ") + exited
+                    + " exited before finishing their start, see the output of the nodes for the cause");
+        }
+        if (!timedOut.isEmpty()) {
+            stopCluster(listenAddress, last);
+            throw new MojoFailureException("Cassandra Node" + (timedOut.size() > 1 ? "s " : " ") + timedOut
+                    + " failed to start within " + startWaitSeconds + "s");
+        }
+    }
+
+    /**
+     * Stops the nodes launched so far.
+     *
+     * @param listenAddress the listen addresses of all the nodes.
+     * @param last          the index after the last node launched.
+     */
+    private void stopCluster(String[] listenAddress, int last) {
+        for (int node = 0; node < last; node++) {
+            Utils.stopCassandraServer(
+                    listenAddress[node],
+                    nativeTransportPort,
+                    node == 0 ? jmxPort : 0,
+                    listenAddress[node],
+                    stopPort,
+                    stopKey,
+                    getLog());
+        }
+    }
+
+    private static int remainingSeconds(long deadline) {
+        if (deadline == Long.MAX_VALUE) {
+            return 0;
+        }
+        // 0 would mean waiting indefinitely
+        return (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(deadline - System.currentTimeMillis() + 999));
+    }
 }
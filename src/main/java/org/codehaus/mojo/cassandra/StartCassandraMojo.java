@@ -18,13 +18,22 @@
  */
 package org.codehaus.mojo.cassandra;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecuteResultHandler;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.FileUtils;
 
 /**
  * Starts a Cassandra instance in the background.
@@ -74,6 +83,78 @@ public class StartCassandraMojo extends AbstractCqlLoadMojo {
     @Parameter(property = "cassandra.addJdk11Options", defaultValue = "false")
     protected boolean addJdk11Options;
 
+    /**
+     * When {@code true}, Cassandra runs inside the Maven JVM, in a class loader of its own built from the same
+     * artifacts as the forked classpath, instead of in a forked process. This saves the JVM start and warm-up of the
+     * forked process, but the node shares the heap of the Maven JVM, so {@code maxMemory} and the JVM options do not
+     * apply, and on Java 11 or newer {@code MAVEN_OPTS} must contain the {@code --add-exports} and
+     * {@code --add-opens} options Cassandra needs. The {@code stop} goal stops the embedded node.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.embedded", defaultValue = "false")
+    protected boolean embedded;
+
+    /**
+     * When {@code true}, a node left running by an earlier build (see the {@code keepAlive} parameter of the
+     * {@code stop} goal) is reused if it was launched with the same Cassandra version, configuration, JVM arguments,
+     * ports and classpath, and restarted otherwise. Nodes launched with this option outlive the Maven JVM and write
+     * their output to {@code output.log} in {@code cassandraDir}, and the fingerprint of their configuration to
+     * {@code cassandraDir} with a {@code .fingerprint} suffix.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.reuse", defaultValue = "false")
+    protected boolean reuse;
+
+    /**
+     * When {@code true}, the modules of a reactor build share one node: the first {@code start} launches it, later
+     * ones only register with it and apply their own load script, and the {@code stop} of the last module that binds
+     * a shared {@code start} shuts it down, whether the modules are built one after the other or in parallel. A node
+     * left running by a module that failed is stopped when Maven exits. Each module should create and work in a keyspace of
+     * its own. Must be set for the {@code stop} goal too.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.shared", defaultValue = "false")
+    protected boolean shared;
+
+    /**
+     * Where to write a JSON breakdown of the time each phase of the start took, both in the build and, as far as they
+     * can be told from the node's monitor and log events, in the node.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.startupReport", defaultValue = "${project.build.directory}/cassandra-startup.json")
+    protected File startupReport;
+
+    /**
+     * When {@code true}, free ports are picked for the native transport, storage, JMX and stop ports in place of the
+     * configured ones, so that several builds on one host can each run their own node. The ports are published as the
+     * project properties {@code cassandra.nativeTransportPort}, {@code cassandra.storagePort},
+     * {@code cassandra.jmxPort} and {@code cassandra.stopPort}, which the later goals of the module use unless they
+     * configure the ports explicitly, and recorded in {@code ports.properties} in {@code cassandraDir}, where the
+     * {@code stop} goal finds them. A restart of the same {@code cassandraDir} keeps the ports if they are still free.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.autoPorts", defaultValue = "false")
+    protected boolean autoPorts;
+
+    /**
+     * When {@code true}, the goal returns as soon as Cassandra has been launched, without waiting for it to finish
+     * starting or loading the script. The {@code await} goal then does both, so that binding {@code start} to an early
+     * phase such as {@code process-test-classes} lets Cassandra boot while the build goes on. Ignored for
+     * {@code embedded} and {@code shared} instances.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.async", defaultValue = "false")
+    protected boolean async;
+
+    @Parameter(defaultValue = "${plugin}", readonly = true)
+    private PluginDescriptor plugin;
+
     @Override
     protected boolean useJdk11Options() {
         return addJdk11Options;
@@ -87,29 +168,317 @@ public class StartCassandraMojo extends AbstractCqlLoadMojo {
             getLog().info("Skipping cassandra: cassandra.skip==true");
             return;
         }
-        long timeStamp = System.currentTimeMillis();
-        boolean isClean = !cassandraDir.isDirectory();
+        if (async && embedded) {
+            getLog().warn("An embedded instance cannot be started asynchronously, starting it synchronously");
+        }
+        if (!shared) {
+            choosePorts();
+            startCassandra(async);
+            recordPorts();
+            return;
+        }
+        AtomicInteger references = Utils.getSharedReferences(session, rpcAddress, nativeTransportPort);
+        String sharedKey = Utils.getSharedKey(rpcAddress, nativeTransportPort);
+        // the projects that bind the shared start are counted up front, so that the node is not stopped by the first
+        // module of a sequential build; a start invoked from the command line is counted as it comes
+        boolean bound = Utils.bindsSharedStart(session, project, plugin.getGroupId(), plugin.getArtifactId());
+        synchronized (references) {
+            if (references.get() == 0) {
+                if (async) {
+                    // the other modules have no await goal of their own that could wait for it
+                    getLog().warn("A shared instance cannot be started asynchronously, starting it synchronously");
+                }
+                choosePorts();
+                startCassandra(false);
+                recordPorts();
+                session.getRepositorySession().getData().set(sharedKey + ".home", cassandraDir);
+                Utils.registerSharedNode(session, rpcAddress, nativeTransportPort, references, cassandraDir);
+                references.set(
+                        bound ? Utils.countSharedStarts(session, plugin.getGroupId(), plugin.getArtifactId()) : 1);
+                return;
+            }
+            File home = (File) session.getRepositorySession().getData().get(sharedKey + ".home");
+            Properties ports = home == null ? null : Utils.readPorts(home);
+            if (autoPorts && ports != null) {
+                usePorts(ports);
+                publishPorts(ports);
+            }
+            if (!bound) {
+                references.incrementAndGet();
+            }
+            getLog().info("Using the shared Cassandra instance");
+            if (loadAfterFirstStart) {
+                execCqlFile();
+            }
+        }
+    }
+
+    /**
+     * Picks the ports of the node when {@link #autoPorts} is set: those of the previous start of the same
+     * {@code cassandraDir} if the node is still running or they are all still free, otherwise new free ones.
+     *
+     * @throws MojoExecutionException if no free ports could be found.
+     */
+    private void choosePorts() throws MojoExecutionException {
+        if (!autoPorts) {
+            return;
+        }
+        Properties previous = Utils.readPorts(cassandraDir);
+        if (previous != null) {
+            usePorts(previous);
+            if (Utils.queryMonitor(listenAddress, stopPort, stopKey, "status") != null
+                    || Utils.isPortFree(listenAddress, nativeTransportPort)
+                            && Utils.isPortFree(listenAddress, storagePort)
+                            && Utils.isPortFree(listenAddress, jmxPort)
+                            && Utils.isPortFree(listenAddress, stopPort)) {
+                getLog().info("Using the ports of the previous start: " + previous);
+                return;
+            }
+        }
+        try {
+            int[] ports = Utils.findFreePorts(listenAddress, 4);
+            nativeTransportPort = ports[0];
+            storagePort = ports[1];
+            jmxPort = ports[2];
+            stopPort = ports[3];
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not find free ports: " + e.getLocalizedMessage(), e);
+        }
+        getLog().info("Using free ports: nativeTransportPort=" + nativeTransportPort + ", storagePort=" + storagePort
+                + ", jmxPort=" + jmxPort + ", stopPort=" + stopPort);
+    }
+
+    /**
+     * Records the ports picked by {@link #autoPorts} for the {@code stop} goal and publishes them as project
+     * properties, or removes the ports recorded by an earlier start when the ports are configured.
+     *
+     * @throws MojoExecutionException if the ports could not be recorded.
+     */
+    private void recordPorts() throws MojoExecutionException {
+        if (!autoPorts) {
+            FileUtils.fileDelete(Utils.getPortsFile(cassandraDir).getAbsolutePath());
+            return;
+        }
+        Properties ports = new Properties();
+        ports.setProperty("nativeTransportPort", Integer.toString(nativeTransportPort));
+        ports.setProperty("storagePort", Integer.toString(storagePort));
+        ports.setProperty("jmxPort", Integer.toString(jmxPort));
+        ports.setProperty("stopPort", Integer.toString(stopPort));
+        try {
+            Utils.writePorts(cassandraDir, ports);
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getLocalizedMessage(), e);
+        }
+        publishPorts(ports);
+    }
+
+    private void usePorts(Properties ports) {
+        nativeTransportPort = Integer.parseInt(ports.getProperty("nativeTransportPort"));
+        storagePort = Integer.parseInt(ports.getProperty("storagePort"));
+        jmxPort = Integer.parseInt(ports.getProperty("jmxPort"));
+        stopPort = Integer.parseInt(ports.getProperty("stopPort"));
+    }
+
+    private void publishPorts(Properties ports) {
+        for (String name : ports.stringPropertyNames()) {
+            project.getProperties().setProperty("cassandra." + name, ports.getProperty(name));
+        }
+    }
+
+    private void startCassandra(boolean async) throws MojoExecutionException, MojoFailureException {
+        final long timeStamp = System.currentTimeMillis();
+        // memory storage does not survive a stop
+        boolean isClean = !cassandraDir.isDirectory() || isMemoryStorage() && !new File(cassandraDir, "data").exists();
         getLog().debug((isClean ? "First start of Cassandra instance in " : "Re-using existing Cassandra instance in ")
                 + cassandraDir.getAbsolutePath());
+        final StartupReport report = new StartupReport(timeStamp);
+        File startupLog = new File(new File(cassandraDir, "logs"), "startup.log");
+        // the process launched, so that the wait ends when it exits; a detached node is not watched
+        DefaultExecuteResultHandler execHandler = null;
         try {
-            Utils.startCassandraServer(cassandraDir, newServiceCommandLine(), createEnvironmentVars(), getLog());
-
-            if (startWaitSeconds >= 0) {
-                getLog().info("Waiting for Cassandra to start...");
-                boolean started = Utils.waitUntilStarted(rpcAddress, nativeTransportPort, startWaitSeconds, getLog());
-                if (!started) {
-                    Utils.stopCassandraServer(
-                            rpcAddress, nativeTransportPort, listenAddress, stopPort, stopKey, getLog());
-                    throw new MojoFailureException("Cassandra failed to start within " + startWaitSeconds + "s");
+            prepareStorage(cassandraDir);
+            report.phase("storage");
+            if (embedded) {
+                createCassandraHome();
+                report.phase("home");
+                getLog().info("Starting embedded Cassandra...");
+                EmbeddedCassandra.start(
+                        EmbeddedCassandra.key(listenAddress, stopPort),
+                        getCassandraClasspathUrls(cassandraDir),
+                        createEmbeddedSystemProperties(),
+                        getLog());
+                report.phase("embedded start");
+                report.nodePhases(startupLog, null);
+            } else if (reuse) {
+                CommandLine commandLine = newServiceCommandLine();
+                String fingerprint = getFingerprint(cassandraDir, commandLine);
+                if (reuseRunningInstance(fingerprint, isClean)) {
+                    getLog().info("Reusing the running Cassandra instance with fingerprint " + fingerprint);
+                    return;
                 }
-            }
-            if (isClean && loadAfterFirstStart) {
-                execCqlFile();
+                report.phase("home");
+                FileUtils.fileWrite(Utils.getFingerprintFile(cassandraDir).getAbsolutePath(), fingerprint);
+                Utils.startDetachedCassandraServer(
+                        cassandraDir,
+                        withFingerprint(commandLine, fingerprint),
+                        createEnvironmentVars(),
+                        new File(cassandraDir, "output.log"),
+                        getLog());
+                report.phase("launch");
+            } else {
+                CommandLine commandLine = newServiceCommandLine();
+                report.phase("home");
+                execHandler = Utils.startCassandraServer(cassandraDir, commandLine, createEnvironmentVars(), getLog());
+                report.phase("launch");
             }
 
-            getLog().info("Cassandra started in " + ((System.currentTimeMillis() - timeStamp) / 100L) / 10.0 + "s");
+            if (async && !embedded) {
+                final boolean clean = isClean;
+                final DefaultExecuteResultHandler handler = execHandler;
+                AwaitCassandraMojo.getPendingStarts(getPluginContext()).add(() -> {
+                    // the time the rest of the build overlapped with the start
+                    report.phase("overlap");
+                    awaitStarted(clean, report, timeStamp, handler);
+                });
+                getLog().info("Cassandra is starting in the background, the await goal waits for it");
+                return;
+            }
         } catch (IOException e) {
             throw new MojoExecutionException(e.getLocalizedMessage(), e);
         }
+        awaitStarted(isClean, report, timeStamp, execHandler);
+    }
+
+    /**
+     * Waits for the launched instance to finish starting, loads the script into a clean instance and reports how long
+     * the start took.
+     *
+     * @param isClean   whether the instance was started with fresh storage.
+     * @param report    the report of the start so far.
+     * @param timeStamp   when the start began.
+     * @param execHandler the handler of the launched process, {@code null} if there is none to watch.
+     * @throws MojoExecutionException if the script could not be loaded.
+     * @throws MojoFailureException   if the instance exited or did not start in time.
+     */
+    private void awaitStarted(
+            boolean isClean, StartupReport report, long timeStamp, DefaultExecuteResultHandler execHandler)
+            throws MojoExecutionException, MojoFailureException {
+        if (!embedded && startWaitSeconds >= 0) {
+            getLog().info("Waiting for Cassandra to start...");
+            Utils.Startup startup = Utils.waitUntilStarted(
+                    rpcAddress,
+                    nativeTransportPort,
+                    jmxPort,
+                    listenAddress,
+                    stopPort,
+                    stopKey,
+                    startWaitSeconds,
+                    execHandler,
+                    getLog());
+            if (startup == Utils.Startup.EXITED) {
+                throw new MojoFailureException(
+                        "Cassandra exited before it finished starting, see its output for the cause");
+            }
+            if (startup != Utils.Startup.STARTED) {
+                Utils.stopCassandraServer(
+                        rpcAddress, nativeTransportPort, jmxPort, listenAddress, stopPort, stopKey, getLog());
+                throw new MojoFailureException("Cassandra failed to start within " + startWaitSeconds + "s");
+            }
+            report.phase("wait");
+            report.nodePhases(
+                    new File(new File(cassandraDir, "logs"), "startup.log"),
+                    Utils.queryMonitor(listenAddress, stopPort, stopKey, "timings"));
+        }
+        if (isClean && loadAfterFirstStart) {
+            execCqlFile();
+            report.phase("load");
+        }
+
+        getLog().info("Cassandra started in " + ((System.currentTimeMillis() - timeStamp) / 100L) / 10.0 + "s");
+        getLog().info("Startup phases: " + report.summary());
+        try {
+            report.write(startupReport);
+        } catch (IOException e) {
+            getLog().warn("Could not write " + startupReport + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Checks for a node left running by an earlier build, stopping it unless it can be reused.
+     *
+     * @param fingerprint the fingerprint of the node that would be launched.
+     * @param isClean     whether this is a clean start, in which case the running node's storage has gone.
+     * @return {@code true} if the running node can be reused.
+     * @throws MojoExecutionException if something went wrong.
+     */
+    private boolean reuseRunningInstance(String fingerprint, boolean isClean) throws MojoExecutionException {
+        String running = Utils.queryMonitor(listenAddress, stopPort, stopKey, "fingerprint");
+        if (running == null) {
+            return false;
+        }
+        if (!isClean
+                && fingerprint.equals(running)
+                && Utils.waitUntilStarted(
+                                rpcAddress,
+                                nativeTransportPort,
+                                jmxPort,
+                                listenAddress,
+                                stopPort,
+                                stopKey,
+                                Math.max(startWaitSeconds, 0),
+                                null,
+                                getLog())
+                        == Utils.Startup.STARTED) {
+            return true;
+        }
+        getLog().info("Restarting the running Cassandra instance as its configuration has changed.");
+        CqlSessions sessions = CqlSessions.get(session);
+        if (sessions != null) {
+            sessions.close(rpcAddress, nativeTransportPort);
+        }
+        Utils.stopCassandraServer(rpcAddress, nativeTransportPort, jmxPort, listenAddress, stopPort, stopKey, getLog());
+        return false;
+    }
+
+    private static CommandLine withFingerprint(CommandLine commandLine, String fingerprint) {
+        CommandLine result = new CommandLine(commandLine.getExecutable());
+        for (String argument : commandLine.getArguments()) {
+            if ("-jar".equals(argument)) {
+                result.addArgument("-D" + CassandraMonitor.FINGERPRINT_PROPERTY_NAME + "=" + fingerprint);
+            }
+            // the arguments have already been quoted
+            result.addArgument(argument, false);
+        }
+        return result;
+    }
+
+    /**
+     * Creates the system properties an embedded node reads its configuration from, mirroring the ones passed on the
+     * command line of a forked node.
+     *
+     * @return the system properties.
+     * @throws IOException if the configuration files cannot be located.
+     */
+    private Map<String, String> createEmbeddedSystemProperties() throws IOException {
+        File conf = new File(cassandraDir, "conf");
+        Map<String, String> properties = new LinkedHashMap<>();
+        // otherwise Cassandra closes System.out and System.err, i.e. the build log
+        properties.put("cassandra-foreground", "yes");
+        properties.put(
+                "cassandra.config",
+                new File(conf, "cassandra.yaml").toURI().toURL().toString());
+        properties.put("cassandra.storagedir", cassandraDir.getAbsolutePath());
+        properties.put(
+                "log4j.configurationFile",
+                System.getProperty(
+                        "log4j.configurationFile",
+                        new File(conf, "log4j-server.xml").toURI().toURL().toString()));
+        properties.put("cassandraLogLevel", logLevel);
+        properties.put("cassandra.jmx.local.port", Integer.toString(jmxPort));
+        properties.putAll(getProfileSystemProperties());
+        if (systemPropertyVariables != null) {
+            properties.putAll(systemPropertyVariables);
+        }
+        return properties;
     }
 }
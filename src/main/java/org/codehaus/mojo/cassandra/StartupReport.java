@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codehaus.mojo.cassandra;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Records how long each phase of starting Cassandra took. The phases the build goes through are timed directly, the
+ * phases the node goes through are reconstructed from the timings its {@link CassandraMonitor} reports and from the
+ * events the server log configuration writes to {@code logs/startup.log}.
+ */
+final class StartupReport {
+    /**
+     * The node phases, each starting with the first event of the given logger whose message starts with the given
+     * text, in the order Cassandra 4 goes through them.
+     */
+    private static final String[][] MARKERS = {
+        {"configuration", "YamlConfigurationLoader", "Configuration location"},
+        {"daemon setup", "CassandraDaemon", "Hostname"},
+        {"system keyspaces", "Keyspace", "Creating replication strategy system "},
+        {"commit log replay", "CommitLog", ""},
+        {"storage service", "StorageService", "Cassandra version"},
+        {"gossip", "StorageService", "Starting up server gossip"},
+        {"distributed keyspaces", "Keyspace", "Creating replication strategy system_traces"},
+        {"join ring", "StorageService", "JOINING"},
+        {"native transport", "StorageService", "Node "},
+    };
+
+    private final long start;
+
+    private final List<Phase> phases = new ArrayList<>();
+
+    private long mark;
+
+    StartupReport(long start) {
+        this.start = start;
+        this.mark = start;
+    }
+
+    /**
+     * Records a build phase that started when the previous one ended and ends now.
+     *
+     * @param name the name of the phase.
+     */
+    void phase(String name) {
+        long now = System.currentTimeMillis();
+        phases.add(new Phase(name, false, mark, now));
+        mark = now;
+    }
+
+    /**
+     * Records the phases of the node, which all happened during the last build phase.
+     *
+     * @param startupLog the events written by the server log configuration.
+     * @param timings    the reply of the monitor's {@code timings} operation, or {@code null} if there is no monitor.
+     */
+    void nodePhases(File startupLog, String timings) {
+        Phase waiting = phases.isEmpty() ? new Phase("", false, start, mark) : phases.get(phases.size() - 1);
+        long started = waiting.end;
+        List<Phase> node = new ArrayList<>();
+        String[] millis = timings == null ? new String[0] : timings.trim().split(" ");
+        if (millis.length == 3) {
+            long jvm = Long.parseLong(millis[0]);
+            long main = Long.parseLong(millis[1]);
+            node.add(new Phase("jvm startup", true, jvm, main));
+            node.add(new Phase("cassandra bootstrap", true, main, main));
+            if (Long.parseLong(millis[2]) > 0) {
+                started = Long.parseLong(millis[2]);
+            }
+        }
+        for (Phase marker : readMarkers(startupLog, start)) {
+            node.add(marker);
+        }
+        node.sort(Comparator.comparingLong(phase -> phase.start));
+        // each phase lasts until the next one starts
+        for (int i = 0; i < node.size(); i++) {
+            Phase phase = node.get(i);
+            if (phase.end == phase.start) {
+                phase.end = i + 1 < node.size() ? node.get(i + 1).start : started;
+            }
+        }
+        if (started < waiting.end) {
+            node.add(new Phase("start notification", true, started, waiting.end));
+        }
+        phases.addAll(node);
+    }
+
+    /**
+     * Reads the first event of each marker, ignoring the events of earlier starts.
+     *
+     * @param startupLog the events written by the server log configuration.
+     * @param since      when the current start began.
+     * @return the node phases the events start.
+     */
+    private static List<Phase> readMarkers(File startupLog, long since) {
+        List<Phase> result = new ArrayList<>();
+        if (!startupLog.isFile()) {
+            return result;
+        }
+        boolean[] seen = new boolean[MARKERS.length];
+        try (BufferedReader reader = Files.newBufferedReader(startupLog.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] event = line.split(" ", 3);
+                if (event.length < 3) {
+                    continue;
+                }
+                long millis;
+                try {
+                    millis = Long.parseLong(event[0]);
+                } catch (NumberFormatException e) {
+                    // a continuation line of a multi-line message
+                    continue;
+                }
+                if (millis < since) {
+                    continue;
+                }
+                for (int i = 0; i < MARKERS.length; i++) {
+                    if (!seen[i] && MARKERS[i][1].equals(event[1]) && event[2].startsWith(MARKERS[i][2])) {
+                        seen[i] = true;
+                        result.add(new Phase(MARKERS[i][0], true, millis, millis));
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // the node phases are a best effort
+        }
+        return result;
+    }
+
+    /**
+     * Writes the report as JSON.
+     *
+     * @param file the file to write to.
+     * @throws IOException if the file could not be written.
+     */
+    void write(File file) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"startMillis\": ").append(start);
+        json.append(",\n  \"durationMillis\": ").append(mark - start);
+        json.append(",\n  \"phases\": [");
+        for (int i = 0; i < phases.size(); i++) {
+            Phase phase = phases.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"name\": \"").append(phase.name).append('"');
+            json.append(", \"node\": ").append(phase.node);
+            json.append(", \"startMillis\": ").append(phase.start);
+            json.append(", \"durationMillis\": ").append(phase.end - phase.start);
+            json.append('}');
+        }
+        json.append("\n  ]\n}\n");
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        FileUtils.fileWrite(file.getAbsolutePath(), "UTF-8", json.toString());
+    }
+
+    /**
+     * Returns a one line summary of the phases, with the node phases nested in the build phase they happened in.
+     *
+     * @return the summary.
+     */
+    String summary() {
+        StringBuilder result = new StringBuilder();
+        boolean nested = false;
+        for (Phase phase : phases) {
+            if (phase.node != nested && phase.node) {
+                result.append(" [");
+            } else if (phase.node != nested) {
+                result.append("]");
+            }
+            if (result.length() > 0 && !result.toString().endsWith("[")) {
+                result.append(", ");
+            }
+            result.append(phase.name).append(' ').append(seconds(phase.end - phase.start));
+            nested = phase.node;
+        }
+        return result.append(nested ? "]" : "").toString();
+    }
+
+    private static String seconds(long millis) {
+        return (millis / 100L) / 10.0 + "s";
+    }
+
+    private static final class Phase {
+        private final String name;
+
+        private final boolean node;
+
+        private final long start;
+
+        private long end;
+
+        Phase(String name, boolean node, long start, long end) {
+            this.name = name;
+            this.node = node;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
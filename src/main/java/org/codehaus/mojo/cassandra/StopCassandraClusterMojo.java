@@ -18,6 +18,9 @@
  */
 package org.codehaus.mojo.cassandra;
 
+import java.io.File;
+
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -33,6 +36,14 @@ import org.apache.maven.plugins.annotations.Parameter;
  */
 @Mojo(name = "stop-cluster", threadSafe = true, defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST)
 public class StopCassandraClusterMojo extends AbstractMojo {
+    /**
+     * The directory to hold cassandra's database, whose memory storage, if any, is removed once Cassandra has stopped.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(defaultValue = "${project.build.directory}/cassandra")
+    protected File cassandraDir;
+
     /**
      * Skip the execution.
      *
@@ -69,6 +80,14 @@ public class StopCassandraClusterMojo extends AbstractMojo {
     @Parameter(property = "cassandra.nativeTransportPort", defaultValue = "9042")
     protected int nativeTransportPort;
 
+    /**
+     * Port of the JMX interface, used to find out when Cassandra has stopped.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.jmxPort", defaultValue = "7199")
+    protected int jmxPort;
+
     /**
      * The number of nodes in the cluster.
      *
@@ -76,6 +95,9 @@ public class StopCassandraClusterMojo extends AbstractMojo {
     @Parameter(property = "cassandra.cluster.size", defaultValue = "4")
     private int clusterSize;
 
+    @Parameter(defaultValue = "${session}", readonly = true)
+    private MavenSession session;
+
     /**
      * {@inheritDoc}
      */
@@ -98,9 +120,21 @@ public class StopCassandraClusterMojo extends AbstractMojo {
             throw new MojoExecutionException(
                     "Invalid cluster size of " + clusterSize + " specified. Must be less than 254");
         }
+        CqlSessions sessions = CqlSessions.get(session);
         for (int node = 0; node < clusterSize; node++) {
+            if (sessions != null) {
+                sessions.close("127.0.0." + (node + 1), nativeTransportPort);
+            }
             Utils.stopCassandraServer(
-                    "127.0.0." + (node + 1), nativeTransportPort, "127.0.0." + (node + 1), stopPort, stopKey, getLog());
+                    "127.0.0." + (node + 1),
+                    nativeTransportPort,
+                    node == 0 ? jmxPort : 0,
+                    "127.0.0." + (node + 1),
+                    stopPort,
+                    stopKey,
+                    getLog());
+            Utils.deleteLinkedStorage(
+                    new File(cassandraDir.getParent(), cassandraDir.getName() + "-node" + (node + 1)), getLog());
         }
     }
 }
@@ -18,12 +18,18 @@
  */
 package org.codehaus.mojo.cassandra;
 
+import java.io.File;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.FileUtils;
 
 /**
  * Stops a background Cassandra instance.
@@ -33,6 +39,35 @@ import org.apache.maven.plugins.annotations.Parameter;
  */
 @Mojo(name = "stop", threadSafe = true, defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST)
 public class StopCassandraMojo extends AbstractMojo {
+    /**
+     * The directory to hold cassandra's database, whose memory storage, if any, is removed once Cassandra has stopped.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(defaultValue = "${project.build.directory}/cassandra")
+    protected File cassandraDir;
+
+    /**
+     * When {@code true}, the node is left running so that a later build can reuse it, see the {@code reuse} parameter
+     * of the {@code start} goal.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.keepAlive", defaultValue = "false")
+    protected boolean keepAlive;
+
+    /**
+     * When {@code true}, the node shared by the modules of the reactor is only stopped once the last module using it
+     * stops, see the {@code shared} parameter of the {@code start} goal.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.shared", defaultValue = "false")
+    protected boolean shared;
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    private MavenSession session;
+
     /**
      * Skip the execution.
      *
@@ -69,6 +104,14 @@ public class StopCassandraMojo extends AbstractMojo {
     @Parameter(property = "cassandra.nativeTransportPort", defaultValue = "9042")
     protected int nativeTransportPort;
 
+    /**
+     * Port of the JMX interface, used to find out when Cassandra has stopped.
+     *
+     * @since 4.0.1
+     */
+    @Parameter(property = "cassandra.jmxPort", defaultValue = "7199")
+    protected int jmxPort;
+
     /**
      * Address to bind to and tell other Cassandra nodes to connect to. You
      * <strong>must</strong> change this if you want multiple nodes to be able to
@@ -101,6 +144,50 @@ public class StopCassandraMojo extends AbstractMojo {
             throw new MojoExecutionException("Please specify a valid stopKey");
         }
 
-        Utils.stopCassandraServer(rpcAddress, nativeTransportPort, listenAddress, stopPort, stopKey, getLog());
+        if (!shared) {
+            stopCassandra(cassandraDir);
+            return;
+        }
+        AtomicInteger references = Utils.getSharedReferences(session, rpcAddress, nativeTransportPort);
+        synchronized (references) {
+            if (references.get() == 0) {
+                getLog().info("The shared Cassandra instance is not running");
+                return;
+            }
+            int remaining = references.decrementAndGet();
+            if (remaining > 0) {
+                getLog().info("Leaving the shared Cassandra instance running for " + remaining + " other module(s)");
+                return;
+            }
+            File home = (File) session.getRepositorySession()
+                    .getData()
+                    .get(Utils.getSharedKey(rpcAddress, nativeTransportPort) + ".home");
+            stopCassandra(home == null ? cassandraDir : home);
+        }
+    }
+
+    private void stopCassandra(File home) {
+        // the ports picked by the autoPorts parameter of the start goal
+        Properties ports = Utils.readPorts(home);
+        if (ports != null) {
+            nativeTransportPort = Integer.parseInt(ports.getProperty("nativeTransportPort"));
+            jmxPort = Integer.parseInt(ports.getProperty("jmxPort"));
+            stopPort = Integer.parseInt(ports.getProperty("stopPort"));
+        }
+        // a node left running keeps no sessions of this build open either
+        CqlSessions sessions = CqlSessions.get(session);
+        if (sessions != null) {
+            sessions.close(rpcAddress, nativeTransportPort);
+        }
+        if (keepAlive) {
+            getLog().info("Leaving Cassandra running: cassandra.keepAlive==true");
+            return;
+        }
+        if (!EmbeddedCassandra.stop(EmbeddedCassandra.key(listenAddress, stopPort), getLog())) {
+            Utils.stopCassandraServer(
+                    rpcAddress, nativeTransportPort, jmxPort, listenAddress, stopPort, stopKey, getLog());
+        }
+        Utils.deleteLinkedStorage(home, getLog());
+        FileUtils.fileDelete(Utils.getFingerprintFile(home).getAbsolutePath());
     }
 }
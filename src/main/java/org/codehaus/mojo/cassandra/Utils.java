@@ -18,26 +18,58 @@
  */
 package org.codehaus.mojo.cassandra;
 
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.math.BigInteger;
 import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import com.datastax.oss.driver.api.core.AllNodesFailedException;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.CqlSessionBuilder;
-import com.datastax.oss.driver.api.core.DriverException;
-import com.datastax.oss.driver.api.core.DriverTimeoutException;
 import org.apache.commons.exec.*;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.StringUtils;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.aether.SessionData;
 import org.yaml.snakeyaml.Yaml;
 
 /**
@@ -46,6 +78,21 @@ import org.yaml.snakeyaml.Yaml;
  * @author stephenc
  */
 public final class Utils {
+    /**
+     * The directories of a Cassandra home that hold the state of the node.
+     */
+    static final String[] STORAGE_DIRECTORIES = {"data", "commitlog", "cdcRawDirectory", "saved_caches"};
+
+    /**
+     * Matches the version in the output of {@code java -version}, such as {@code "1.8.0_392"} or {@code "17.0.9"}.
+     */
+    private static final Pattern JAVA_VERSION = Pattern.compile("version \"(?:1\\.)?(\\d+)");
+
+    /**
+     * The feature versions of the Java executables asked so far.
+     */
+    private static final Map<String, Integer> JAVA_VERSIONS = new ConcurrentHashMap<>();
+
     /**
      * Do not instantiate.
      */
@@ -58,12 +105,20 @@ public final class Utils {
      *
      * @param rpcAddress          The rpcAddress to connect to in order to see if Cassandra has stopped.
      * @param nativeTransportPort The nativeTransportPort to connect on to check if Cassandra has stopped.
+     * @param jmxPort             The JMX port to check if Cassandra has stopped, {@code 0} if it has no JMX interface.
+     * @param stopAddress         The address to stop on.
      * @param stopPort            The port to stop on.
      * @param stopKey             The key to stop with,
      * @param log                 The log to write to.
      */
     static void stopCassandraServer(
-            String rpcAddress, int nativeTransportPort, String stopAddress, int stopPort, String stopKey, Log log) {
+            String rpcAddress,
+            int nativeTransportPort,
+            int jmxPort,
+            String stopAddress,
+            int stopPort,
+            String stopKey,
+            Log log) {
         try {
             Socket s = new Socket(InetAddress.getByName(stopAddress), stopPort);
             s.setSoLinger(false, 0);
@@ -81,20 +136,17 @@ public final class Utils {
         }
         long maxWaiting = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
         boolean stopped = false;
-        while (!stopped && System.currentTimeMillis() < maxWaiting) {
-            try (CqlSession cqlSession = CqlSession.builder()
-                    .addContactPoint(new InetSocketAddress(rpcAddress, nativeTransportPort))
-                    .withLocalDatacenter("datacenter1")
-                    .build()) {
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException e1) {
-                    // ignore
+        try (CassandraProbe probe = new CassandraProbe(rpcAddress, nativeTransportPort, jmxPort, log)) {
+            while (!stopped && System.currentTimeMillis() < maxWaiting) {
+                stopped = probe.probe() == CassandraProbe.State.DOWN;
+                if (!stopped) {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
                 }
-            } catch (AllNodesFailedException | DriverTimeoutException e) {
-                stopped = true;
-            } catch (DriverException e) {
-                log.debug(e.getLocalizedMessage(), e);
             }
         }
         if (stopped) {
@@ -141,24 +193,43 @@ public final class Utils {
     }
 
     /**
-     * Returns {@code true} if the resource is not a file, does not exist or is older than the project file.
+     * Runs a short lived process to completion.
      *
-     * @param project  the project that the resource is dependent on.
-     * @param resource the resource to query.
-     * @return {@code true} if the resource is not a file, does not exist or is older than the project file.
+     * @param commandLine the command line of the process.
+     * @return the output of the process.
+     * @throws IOException if the process could not be run or did not exit with {@code 0}.
      */
-    static boolean shouldGenerateResource(MavenProject project, File resource) {
-        if (!resource.isFile()) {
-            return true;
-        }
-        long resourceLM = resource.lastModified();
-        long projectLM = project.getFile().lastModified();
-        if (Long.signum(resourceLM) == Long.signum(projectLM)) {
-            // the two dates are in the same epoch or else the universe is lasting a really long time.
-            return resourceLM < projectLM;
+    static String execute(CommandLine commandLine) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Executor exec = DefaultExecutor.builder().get();
+        exec.setStreamHandler(new PumpStreamHandler(output));
+        exec.setWatchdog(
+                ExecuteWatchdog.builder().setTimeout(Duration.ofMinutes(5)).get());
+        try {
+            exec.execute(commandLine);
+        } catch (ExecuteException e) {
+            throw new IOException(e.getMessage() + ": " + output.toString().trim(), e);
         }
-        // the universe has been around long enough that we should rewrite the resource.
-        return true;
+        return output.toString();
+    }
+
+    /**
+     * Returns the feature version of a Java executable, such as {@code 8} or {@code 17}.
+     *
+     * @param java the Java executable.
+     * @return the feature version, or {@code 0} if it could not be found.
+     */
+    static int getJavaVersion(String java) {
+        return JAVA_VERSIONS.computeIfAbsent(java, executable -> {
+            CommandLine commandLine = new CommandLine(executable);
+            commandLine.addArgument("-version");
+            try {
+                Matcher matcher = JAVA_VERSION.matcher(execute(commandLine));
+                return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+            } catch (IOException e) {
+                return 0;
+            }
+        });
     }
 
     /**
@@ -185,60 +256,652 @@ public final class Utils {
     }
 
     /**
-     * Waits until the Cassandra server at the specified RPC address and native transport port has started accepting connections.
+     * Launches a Cassandra server that outlives the Maven JVM, writing its output to a file instead of the build log.
+     *
+     * @param cassandraDir The Cassandra home.
+     * @param commandLine  The command line to launch.
+     * @param environment  The environment to launch with.
+     * @param output       The file to append the output of Cassandra to.
+     * @param log          The log to write to.
+     * @throws MojoExecutionException if Cassandra could not be launched.
+     */
+    static void startDetachedCassandraServer(
+            File cassandraDir, CommandLine commandLine, Map<String, String> environment, File output, Log log)
+            throws MojoExecutionException {
+        log.debug("Executing command line: " + commandLine);
+        ProcessBuilder builder = new ProcessBuilder(commandLine.toStrings())
+                .directory(cassandraDir)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(output));
+        builder.environment().clear();
+        builder.environment().putAll(environment);
+        try {
+            builder.start().getOutputStream().close();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Command execution failed.", e);
+        }
+        log.info("Cassandra output is written to " + output);
+    }
+
+    /**
+     * Sends an operation to the monitor of a Cassandra server and returns its reply.
+     *
+     * @param stopAddress The address the monitor listens on.
+     * @param stopPort    The port the monitor listens on.
+     * @param stopKey     The key the monitor expects.
+     * @param operation   The operation.
+     * @return the reply, empty if the monitor did not reply, or {@code null} if no monitor is listening.
+     */
+    static String queryMonitor(String stopAddress, int stopPort, String stopKey, String operation) {
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress(InetAddress.getByName(stopAddress), stopPort), 1000);
+            s.setSoTimeout(5000);
+            OutputStream out = s.getOutputStream();
+            out.write((stopKey + "\r\n" + operation + "\r\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            String reply =
+                    new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8)).readLine();
+            return reply == null ? "" : reply;
+        } catch (SocketTimeoutException e) {
+            return "";
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the file the fingerprint of a node's configuration is written to, next to its Cassandra home.
+     *
+     * @param cassandraDir The Cassandra home.
+     * @return the fingerprint file.
+     */
+    static File getFingerprintFile(File cassandraDir) {
+        return new File(cassandraDir.getParentFile(), cassandraDir.getName() + ".fingerprint");
+    }
+
+    /**
+     * Returns the file the ports picked by {@code autoPorts} are recorded in.
+     *
+     * @param cassandraDir The Cassandra home.
+     * @return the ports file.
+     */
+    static File getPortsFile(File cassandraDir) {
+        return new File(cassandraDir, "ports.properties");
+    }
+
+    /**
+     * Reads the ports recorded by {@code autoPorts} for a Cassandra home.
+     *
+     * @param cassandraDir The Cassandra home.
+     * @return the ports keyed by parameter name, or {@code null} if none are recorded.
+     */
+    static Properties readPorts(File cassandraDir) {
+        File file = getPortsFile(cassandraDir);
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties ports = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            ports.load(in);
+            return ports;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Records the ports picked by {@code autoPorts} for a Cassandra home.
+     *
+     * @param cassandraDir The Cassandra home.
+     * @param ports        the ports keyed by parameter name.
+     * @throws IOException if the file could not be written.
+     */
+    static void writePorts(File cassandraDir, Properties ports) throws IOException {
+        try (OutputStream out = Files.newOutputStream(getPortsFile(cassandraDir).toPath())) {
+            ports.store(out, "Ports picked by cassandra-maven-plugin");
+        }
+    }
+
+    /**
+     * Finds ports that are free on the given address. The ports are held open together while they are picked so that
+     * they are distinct, which leaves a small window in which another process could take one of them.
+     *
+     * @param address the address the ports will be bound to.
+     * @param count   the number of ports.
+     * @return the ports.
+     * @throws IOException if no ports could be bound.
+     */
+    static int[] findFreePorts(String address, int count) throws IOException {
+        InetAddress bindAddress = InetAddress.getByName(address);
+        ServerSocket[] sockets = new ServerSocket[count];
+        try {
+            int[] ports = new int[count];
+            for (int i = 0; i < count; i++) {
+                sockets[i] = new ServerSocket(0, 1, bindAddress);
+                ports[i] = sockets[i].getLocalPort();
+            }
+            return ports;
+        } finally {
+            for (ServerSocket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if a port is free on the given address.
+     *
+     * @param address the address.
+     * @param port    the port.
+     * @return {@code true} if the port could be bound.
+     */
+    static boolean isPortFree(String address, int port) {
+        try (ServerSocket socket = new ServerSocket(port, 1, InetAddress.getByName(address))) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of modules yet to stop the node shared by the reactor, creating the count on first use. The
+     * count is a JDK type so that it can be shared between plugin class realms, and callers synchronize on it while
+     * they start or stop the node.
+     *
+     * @param session             The Maven session.
+     * @param rpcAddress          The RPC address of the shared node.
+     * @param nativeTransportPort The native transport port of the shared node.
+     * @return the number of modules yet to stop the shared node.
+     */
+    static AtomicInteger getSharedReferences(MavenSession session, String rpcAddress, int nativeTransportPort) {
+        SessionData data = session.getRepositorySession().getData();
+        Object key = getSharedKey(rpcAddress, nativeTransportPort);
+        Object references = data.get(key);
+        while (references == null) {
+            data.set(key, null, new AtomicInteger());
+            references = data.get(key);
+        }
+        return (AtomicInteger) references;
+    }
+
+    /**
+     * Registers the node shared by the reactor under the native transport port it was started with, when
+     * {@code autoPorts} picked another one than the configured port the {@code start} goals find it by. The
+     * {@code stop} goals only know the port that was picked, as it is published as a project property.
+     *
+     * @param session             The Maven session.
+     * @param rpcAddress          The RPC address of the shared node.
+     * @param nativeTransportPort The native transport port the shared node was started with.
+     * @param references          The number of modules yet to stop the shared node.
+     * @param home                The cassandra home of the shared node.
+     */
+    static void registerSharedNode(
+            MavenSession session, String rpcAddress, int nativeTransportPort, AtomicInteger references, File home) {
+        SessionData data = session.getRepositorySession().getData();
+        String key = getSharedKey(rpcAddress, nativeTransportPort);
+        data.set(key, references);
+        data.set(key + ".home", home);
+    }
+
+    /**
+     * Counts the projects of the reactor that bind the {@code start} goal of the plugin with {@code shared} set, so
+     * that the shared node outlives the modules that stop before the last of them has started.
+     *
+     * @param session    The Maven session.
+     * @param groupId    The group id of the plugin.
+     * @param artifactId The artifact id of the plugin.
+     * @return the number of projects.
+     */
+    static int countSharedStarts(MavenSession session, String groupId, String artifactId) {
+        int count = 0;
+        for (MavenProject project : session.getProjects()) {
+            if (bindsSharedStart(session, project, groupId, artifactId)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Tells whether a project binds the {@code start} goal of the plugin with {@code shared} set, in the configuration
+     * of the execution or of the plugin, or through the {@code cassandra.shared} property.
+     *
+     * @param session    The Maven session.
+     * @param project    The project.
+     * @param groupId    The group id of the plugin.
+     * @param artifactId The artifact id of the plugin.
+     * @return {@code true} if the project binds a shared start.
+     */
+    static boolean bindsSharedStart(MavenSession session, MavenProject project, String groupId, String artifactId) {
+        for (Plugin plugin : project.getBuildPlugins()) {
+            if (!groupId.equals(plugin.getGroupId()) || !artifactId.equals(plugin.getArtifactId())) {
+                continue;
+            }
+            for (PluginExecution execution : plugin.getExecutions()) {
+                if (!execution.getGoals().contains("start")) {
+                    continue;
+                }
+                String shared = getChildValue(execution.getConfiguration(), "shared");
+                if (shared == null) {
+                    shared = getChildValue(plugin.getConfiguration(), "shared");
+                }
+                if (shared == null) {
+                    shared = "${cassandra.shared}";
+                }
+                if (shared.startsWith("${") && shared.endsWith("}")) {
+                    String property = shared.substring(2, shared.length() - 1);
+                    shared = session.getUserProperties().getProperty(property);
+                    if (shared == null) {
+                        shared = project.getProperties().getProperty(property);
+                    }
+                }
+                if (shared != null && Boolean.parseBoolean(shared.trim())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String getChildValue(Object configuration, String name) {
+        if (!(configuration instanceof Xpp3Dom)) {
+            return null;
+        }
+        Xpp3Dom child = ((Xpp3Dom) configuration).getChild(name);
+        return child == null ? null : child.getValue();
+    }
+
+    /**
+     * Returns the key under which the reactor's shared node records things in the session.
+     *
+     * @param rpcAddress          The RPC address of the shared node.
+     * @param nativeTransportPort The native transport port of the shared node.
+     * @return the key.
+     */
+    static String getSharedKey(String rpcAddress, int nativeTransportPort) {
+        return "cassandra-maven-plugin.shared:" + rpcAddress + ":" + nativeTransportPort;
+    }
+
+    /**
+     * The keyspaces Cassandra creates for itself.
+     */
+    static final Set<String> SYSTEM_KEYSPACES = new HashSet<>(Arrays.asList(
+            "system",
+            "system_auth",
+            "system_distributed",
+            "system_schema",
+            "system_traces",
+            "system_views",
+            "system_virtual_schema"));
+
+    /**
+     * The MBean of the node's storage service.
+     */
+    static final String STORAGE_SERVICE_MBEAN = "org.apache.cassandra.db:type=StorageService";
+
+    /**
+     * Connects to the JMX interface of a node.
+     *
+     * @param host    The host of the JMX interface.
+     * @param jmxPort The port of the JMX interface.
+     * @return the connector, to be closed by the caller.
+     * @throws IOException if the node could not be reached.
+     */
+    static JMXConnector connectJmx(String host, int jmxPort) throws IOException {
+        return JMXConnectorFactory.connect(
+                new JMXServiceURL("service:jmx:rmi:///jndi/rmi://" + host + ":" + jmxPort + "/jmxrmi"));
+    }
+
+    /**
+     * Clears the snapshots whose tag starts with the given prefix over JMX. A failure is only logged, the snapshots
+     * merely take up disk space.
+     *
+     * @param host    The host of the JMX interface.
+     * @param jmxPort The port of the JMX interface.
+     * @param prefix  The prefix of the tags to clear.
+     * @param log     The log to write to.
+     */
+    static void clearSnapshots(String host, int jmxPort, String prefix, Log log) {
+        try (JMXConnector connector = connectJmx(host, jmxPort)) {
+            MBeanServerConnection connection = connector.getMBeanServerConnection();
+            ObjectName storageService = new ObjectName(STORAGE_SERVICE_MBEAN);
+            Map<?, ?> snapshots = (Map<?, ?>) connection.getAttribute(storageService, "SnapshotDetails");
+            for (Object tag : snapshots.keySet()) {
+                if (tag.toString().startsWith(prefix)) {
+                    log.debug("Clearing snapshot " + tag);
+                    connection.invoke(
+                            storageService,
+                            "clearSnapshot",
+                            new Object[] {tag.toString(), new String[0]},
+                            new String[] {String.class.getName(), String[].class.getName()});
+                }
+            }
+        } catch (IOException | JMException e) {
+            log.warn("Could not clear snapshots: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Hard links the regular files of a directory into another one, copying them where they cannot be linked, for
+     * example across file systems.
+     *
+     * @param source The directory to link the files of.
+     * @param target The directory to link the files into, created if needed.
+     * @return the number of files.
+     * @throws IOException if a file could neither be linked nor copied.
+     */
+    static int linkFiles(File source, File target) throws IOException {
+        File[] files = source.listFiles(File::isFile);
+        if (files == null) {
+            return 0;
+        }
+        Files.createDirectories(target.toPath());
+        for (File file : files) {
+            linkFile(file, new File(target, file.getName()));
+        }
+        return files.length;
+    }
+
+    /**
+     * Hard links a file, copying it where it cannot be linked.
+     *
+     * @param source The file to link.
+     * @param link   The link to create, which must not exist.
+     * @throws IOException if the file could neither be linked nor copied.
+     */
+    static void linkFile(File source, File link) throws IOException {
+        try {
+            Files.createLink(link.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source.toPath(), link.toPath());
+        }
+    }
+
+    /**
+     * Imports SSTables into a table of a running node, which moves them out of their directories into the table's
+     * directory.
+     *
+     * @param connection  the JMX connection to the node.
+     * @param keyspace    the keyspace.
+     * @param table       the table.
+     * @param directories the directories holding the SSTables.
+     * @throws IOException            if the node could not be reached.
+     * @throws JMException            if the import could not be invoked.
+     * @throws MojoExecutionException if the import failed.
+     */
+    static void importSSTables(MBeanServerConnection connection, String keyspace, String table, Set<String> directories)
+            throws IOException, JMException, MojoExecutionException {
+        ObjectName store =
+                new ObjectName("org.apache.cassandra.db:type=Tables,keyspace=" + keyspace + ",table=" + table);
+        // keep the levels, skip the verification, invalidate the caches, move the files
+        List<?> failed = (List<?>) connection.invoke(
+                store,
+                "importNewSSTables",
+                new Object[] {directories, false, false, false, false, true, false, false},
+                new String[] {
+                    Set.class.getName(),
+                    boolean.class.getName(),
+                    boolean.class.getName(),
+                    boolean.class.getName(),
+                    boolean.class.getName(),
+                    boolean.class.getName(),
+                    boolean.class.getName(),
+                    boolean.class.getName()
+                });
+        if (failed != null && !failed.isEmpty()) {
+            throw new MojoExecutionException("Could not import " + failed + " into " + keyspace + "." + table);
+        }
+    }
+
+    /**
+     * Deletes the storage directories that were placed outside of the Cassandra home by linking them, and the links.
+     *
+     * @param cassandraDir The Cassandra home.
+     * @param log          The log to write to.
+     */
+    static void deleteLinkedStorage(File cassandraDir, Log log) {
+        Path root = null;
+        for (String name : STORAGE_DIRECTORIES) {
+            Path link = new File(cassandraDir, name).toPath();
+            if (!Files.isSymbolicLink(link)) {
+                continue;
+            }
+            try {
+                Path target = Files.readSymbolicLink(link);
+                log.debug("Deleting " + target);
+                FileUtils.deleteDirectory(target.toFile());
+                Files.delete(link);
+                root = target.getParent();
+            } catch (IOException e) {
+                log.warn("Could not delete " + link + ": " + e.getLocalizedMessage());
+            }
+        }
+        if (root != null) {
+            try {
+                Files.deleteIfExists(root);
+            } catch (IOException e) {
+                log.debug("Could not delete " + root, e);
+            }
+        }
+    }
+
+    /**
+     * Computes a hex encoded SHA-256 digest of the supplied values.
+     *
+     * @param values the values to digest, {@code null} values are treated as empty.
+     * @return the hex encoded digest.
+     */
+    static String digest(String... values) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String value : values) {
+                if (value != null) {
+                    digest.update(value.getBytes(StandardCharsets.UTF_8));
+                }
+                digest.update((byte) 0);
+            }
+            return String.format("%064x", new BigInteger(1, digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * How waiting for a node to start ended.
+     */
+    enum Startup {
+        /**
+         * The node has finished starting.
+         */
+        STARTED,
+        /**
+         * The node exited before it finished starting.
+         */
+        EXITED,
+        /**
+         * The node did not finish starting in time.
+         */
+        TIMED_OUT
+    }
+
+    /**
+     * Waits until the Cassandra server has started. When the {@link CassandraMonitor} is enabled the wait blocks on its
+     * {@code await} operation, which replies as soon as the daemon has finished starting and drops the connection if
+     * the server dies first. Otherwise this falls back to probing the node. Either way, the wait ends as soon as the
+     * process of the server, if known, has exited.
+     *
+     * @param rpcAddress          The RPC address to connect to.
+     * @param nativeTransportPort The native transport port to connect on.
+     * @param jmxPort             The JMX port to connect on, {@code 0} if it has no JMX interface.
+     * @param stopAddress         The address the monitor listens on.
+     * @param stopPort            The port the monitor listens on.
+     * @param stopKey             The key the monitor requires.
+     * @param startWaitSeconds    The maximum number of seconds to wait, {@code 0} waits indefinitely.
+     * @param execHandler         The handler of the server process, {@code null} if it was not launched by this build.
+     * @param log                 the {@link Log} to log to.
+     * @return how the wait ended.
+     * @throws MojoExecutionException if something went wrong.
+     */
+    static Startup waitUntilStarted(
+            String rpcAddress,
+            int nativeTransportPort,
+            int jmxPort,
+            String stopAddress,
+            int stopPort,
+            String stopKey,
+            int startWaitSeconds,
+            DefaultExecuteResultHandler execHandler,
+            Log log)
+            throws MojoExecutionException {
+        if (stopKey == null || stopPort <= 0 || stopPort >= 65536) {
+            return waitUntilStarted(rpcAddress, nativeTransportPort, jmxPort, startWaitSeconds, execHandler, log);
+        }
+        long maxWaiting = startWaitSeconds == 0
+                ? Long.MAX_VALUE
+                : System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(startWaitSeconds);
+        while (System.currentTimeMillis() < maxWaiting) {
+            if (hasExited(execHandler, log)) {
+                return Startup.EXITED;
+            }
+            try (Socket s = new Socket()) {
+                try {
+                    s.connect(new InetSocketAddress(InetAddress.getByName(stopAddress), stopPort), 1000);
+                } catch (IOException e) {
+                    // the monitor is not listening yet
+                    log.debug(e.getLocalizedMessage(), e);
+                    Thread.sleep(100);
+                    continue;
+                }
+                OutputStream out = s.getOutputStream();
+                out.write((stopKey + "\r\nawait\r\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                if (maxWaiting != Long.MAX_VALUE) {
+                    s.setSoTimeout(
+                            (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxWaiting - System.currentTimeMillis())));
+                }
+                String reply = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8))
+                        .readLine();
+                if (CassandraMonitor.STARTED.equals(reply)) {
+                    log.info("Cassandra started.");
+                    return Startup.STARTED;
+                }
+                log.error("Cassandra exited before it finished starting.");
+                return Startup.EXITED;
+            } catch (SocketTimeoutException e) {
+                return Startup.TIMED_OUT;
+            } catch (IOException e) {
+                log.error("Cassandra exited before it finished starting.", e);
+                return Startup.EXITED;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while waiting for Cassandra to start", e);
+            }
+        }
+        return Startup.TIMED_OUT;
+    }
+
+    /**
+     * Waits until the Cassandra server at the specified RPC address and native transport port has started accepting
+     * connections, probing it with a {@link CassandraProbe}.
      *
      * @param rpcAddress            The RPC address to connect to.
      * @param nativeTransportPort   The native transport port to connect on.
+     * @param jmxPort               The JMX port to connect on, {@code 0} if it has no JMX interface.
      * @param startWaitSeconds      The maximum number of seconds to wait.
+     * @param execHandler           The handler of the server process, {@code null} if not launched by this build.
      * @param log                   the {@link Log} to log to.
-     * @return {@code true} if Cassandra is started.
+     * @return how the wait ended.
      * @throws MojoExecutionException if something went wrong.
      */
-    static boolean waitUntilStarted(String rpcAddress, int nativeTransportPort, int startWaitSeconds, Log log)
+    static Startup waitUntilStarted(
+            String rpcAddress,
+            int nativeTransportPort,
+            int jmxPort,
+            int startWaitSeconds,
+            DefaultExecuteResultHandler execHandler,
+            Log log)
             throws MojoExecutionException {
         long maxWaiting = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(startWaitSeconds);
-        while (startWaitSeconds == 0 || System.currentTimeMillis() < maxWaiting) {
-            try (CqlSession cqlSession = CqlSession.builder()
-                    .addContactPoint(new InetSocketAddress(rpcAddress, nativeTransportPort))
-                    .withLocalDatacenter("datacenter1")
-                    .build()) {
-                try {
-                    log.info("Cassandra cluster \"" + cqlSession.getMetadata().getClusterName() + "\" started.");
-                    return true;
-                } catch (Exception e) {
-                    throw new MojoExecutionException(e.getLocalizedMessage(), e);
+        try (CassandraProbe probe = new CassandraProbe(rpcAddress, nativeTransportPort, jmxPort, log)) {
+            while (startWaitSeconds == 0 || System.currentTimeMillis() < maxWaiting) {
+                if (probe.probe() == CassandraProbe.State.READY) {
+                    String clusterName = probe.getClusterName();
+                    log.info(
+                            clusterName == null
+                                    ? "Cassandra started."
+                                    : "Cassandra cluster \"" + clusterName + "\" started.");
+                    return Startup.STARTED;
                 }
-            } catch (AllNodesFailedException | DriverTimeoutException e) {
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException e1) {
-                    // ignore
+                if (hasExited(execHandler, log)) {
+                    return Startup.EXITED;
                 }
-            } catch (DriverException e) {
-                log.debug(e.getLocalizedMessage(), e);
+                Thread.sleep(100);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while waiting for Cassandra to start", e);
         }
-        return false;
+        return Startup.TIMED_OUT;
+    }
+
+    private static boolean hasExited(DefaultExecuteResultHandler execHandler, Log log) {
+        if (execHandler == null || !execHandler.hasResult()) {
+            return false;
+        }
+        log.error("Cassandra exited with code " + execHandler.getExitValue() + " before it finished starting.");
+        return true;
     }
 
     /**
-     * Call {@link CqlOperation#executeOperation(CqlSession)} on the provided operation
+     * Call {@link CqlOperation#executeOperation(CqlSession)} on the provided operation, with a session borrowed from
+     * the {@link CqlSessions} of the build if the operation has a Maven session, or one of its own otherwise. An
+     * {@link CqlOperation#isExclusive() exclusive} operation has the borrowed session to itself while it runs.
      * @throws MojoExecutionException
      */
     public static void executeCql(CqlOperation cqlOperation) throws MojoExecutionException {
-        CqlSessionBuilder cqlSessionBuilder = CqlSession.builder()
-                .addContactPoint(
-                        new InetSocketAddress(cqlOperation.getRpcAddress(), cqlOperation.getNativeTransportPort()))
-                .withLocalDatacenter("datacenter1");
-        if (StringUtils.isNotBlank(cqlOperation.getKeyspace())) {
-            cqlSessionBuilder.withKeyspace(cqlOperation.getKeyspace());
+        CqlSessions sessions = CqlSessions.get(cqlOperation.getMavenSession());
+        CqlSession cqlSession;
+        try {
+            cqlSession = sessions == null
+                    ? connect(cqlOperation, cqlOperation.getKeyspace())
+                    : sessions.borrow(
+                            cqlOperation.getRpcAddress(),
+                            cqlOperation.getNativeTransportPort(),
+                            cqlOperation.getKeyspace(),
+                            cqlOperation.isExclusive(),
+                            keyspace -> connect(cqlOperation, keyspace));
+        } catch (RuntimeException e) {
+            throw new MojoExecutionException(
+                    "Could not connect to Apache Cassandra at " + cqlOperation.getRpcAddress() + ":"
+                            + cqlOperation.getNativeTransportPort() + ": " + e.getLocalizedMessage(),
+                    e);
         }
-        try (CqlSession cqlSession = cqlSessionBuilder.build()) {
+        try {
             cqlOperation.executeOperation(cqlSession);
         } catch (CqlExecutionException e) {
             throw new MojoExecutionException("API Exception calling Apache Cassandra", e);
-        } catch (Exception e) {
-            throw new MojoExecutionException("Something went wrong cleaning up", e);
+        } catch (RuntimeException e) {
+            throw new MojoExecutionException("Exception calling Apache Cassandra: " + e.getLocalizedMessage(), e);
+        } finally {
+            if (sessions == null) {
+                cqlSession.close();
+            } else {
+                sessions.release(cqlSession);
+            }
+        }
+    }
+
+    private static CqlSession connect(CqlOperation cqlOperation, String keyspace) {
+        CqlSessionBuilder cqlSessionBuilder = CqlSession.builder()
+                .addContactPoint(
+                        new InetSocketAddress(cqlOperation.getRpcAddress(), cqlOperation.getNativeTransportPort()))
+                .withLocalDatacenter("datacenter1");
+        if (StringUtils.isNotBlank(keyspace)) {
+            cqlSessionBuilder.withKeyspace(keyspace);
         }
+        return cqlSessionBuilder.build();
     }
 }
@@ -0,0 +1,173 @@
+package org.codehaus.mojo.cassandra;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DefaultProtocolVersion;
+import com.datastax.oss.driver.api.core.context.DriverContext;
+import com.datastax.oss.driver.api.core.metadata.Metadata;
+import com.datastax.oss.driver.api.core.metadata.schema.ClusteringOrder;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.KeyspaceMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CqlBatcherTest {
+
+    private static final String ROW_1 = "INSERT INTO t (k1, k2, c, v) VALUES (1, 'a', 1, 'x')";
+
+    private CqlPipeline pipeline;
+
+    private CqlBatcher batcher;
+
+    @Before
+    public void setUp() {
+        ColumnMetadata k1 = column("k1", DataTypes.INT);
+        ColumnMetadata k2 = column("k2", DataTypes.TEXT);
+        ColumnMetadata c = column("c", DataTypes.INT);
+        ColumnMetadata v = column("v", DataTypes.TEXT);
+        Map<CqlIdentifier, ColumnMetadata> columns = new LinkedHashMap<>();
+        for (ColumnMetadata column : Arrays.asList(k1, k2, c, v)) {
+            columns.put(column.getName(), column);
+        }
+        TableMetadata table = mock(TableMetadata.class);
+        when(table.getColumns()).thenReturn(columns);
+        when(table.getPartitionKey()).thenReturn(Arrays.asList(k1, k2));
+        when(table.getClusteringColumns()).thenReturn(Collections.singletonMap(c, ClusteringOrder.ASC));
+        KeyspaceMetadata keyspace = mock(KeyspaceMetadata.class);
+        when(keyspace.getTable(CqlIdentifier.fromCql("t"))).thenReturn(Optional.of(table));
+        Metadata metadata = mock(Metadata.class);
+        when(metadata.getKeyspace(CqlIdentifier.fromCql("ks"))).thenReturn(Optional.of(keyspace));
+        DriverContext context = mock(DriverContext.class);
+        when(context.getCodecRegistry()).thenReturn(CodecRegistry.DEFAULT);
+        when(context.getProtocolVersion()).thenReturn(DefaultProtocolVersion.V4);
+        CqlSession cqlSession = mock(CqlSession.class);
+        when(cqlSession.getKeyspace()).thenReturn(Optional.of(CqlIdentifier.fromCql("ks")));
+        when(cqlSession.getMetadata()).thenReturn(metadata);
+        when(cqlSession.getContext()).thenReturn(context);
+        pipeline = mock(CqlPipeline.class);
+        when(pipeline.getKeyspace()).thenReturn(CqlIdentifier.fromCql("ks"));
+        batcher = new CqlBatcher(cqlSession, pipeline, 10, mock(Log.class));
+    }
+
+    @Test
+    public void batchesTheWritesOfAPartition() throws Exception {
+        String update = "UPDATE ks.t USING TTL 60 SET v = 'y' WHERE k1 = 1 AND k2 = 'a' AND c = 2";
+        assertThat(batcher.execute(ROW_1)).isNull();
+        assertThat(batcher.execute(update)).isNull();
+        verify(pipeline, never()).execute(anyString());
+        batcher.flush();
+
+        verify(pipeline).executeBatch(Arrays.asList(ROW_1, update));
+    }
+
+    @Test
+    public void comparesKeysAsTheirColumnsReadThem() throws Exception {
+        String sameRow = "UPDATE t SET v = 'y' WHERE k1 = 01 AND k2 = $$a$$ AND c = +1";
+        batcher.execute(ROW_1);
+        batcher.execute(sameRow);
+        batcher.flush();
+
+        // the second write to the row waits for the first, which it would otherwise tie with
+        InOrder order = inOrder(pipeline);
+        order.verify(pipeline).execute(ROW_1);
+        order.verify(pipeline).execute(sameRow);
+        verify(pipeline, never()).executeBatch(anyList());
+    }
+
+    @Test
+    public void keepsTheOrderOfTheWritesToARow() throws Exception {
+        String second = "INSERT INTO t (k1, k2, c, v) VALUES (1, 'a', 2, 'y')";
+        String again = "UPDATE t SET v = 'z' WHERE k1 = 1 AND k2 = 'a' AND c = 1";
+        batcher.execute(ROW_1);
+        batcher.execute(second);
+        batcher.execute(again);
+        batcher.flush();
+
+        InOrder order = inOrder(pipeline);
+        order.verify(pipeline).executeBatch(Arrays.asList(ROW_1, second));
+        order.verify(pipeline).execute(again);
+    }
+
+    @Test
+    public void readsQuotedIdentifiersAndLiterals() throws Exception {
+        String quoted = "INSERT INTO \"ks\".\"t\" (\"k1\", k2, c, v) VALUES (1, 'it''s', 1, 'x')";
+        String dollar = "UPDATE t SET v = 'y' WHERE k1 = 1 AND k2 = $$it's$$ AND c = 2";
+        batcher.execute(quoted);
+        batcher.execute(dollar);
+        batcher.flush();
+
+        verify(pipeline).executeBatch(Arrays.asList(quoted, dollar));
+    }
+
+    @Test
+    public void ignoresComments() throws Exception {
+        String commented = "INSERT /* the second row */ INTO t (k1, k2, c, v) VALUES (1, 'a', 2, 'x') -- IF NOT EXISTS";
+        batcher.execute(ROW_1);
+        batcher.execute(commented);
+        batcher.flush();
+
+        verify(pipeline).executeBatch(Arrays.asList(ROW_1, commented));
+    }
+
+    @Test
+    public void sendsConditionalWritesAfterThePendingBatches() throws Exception {
+        String conditional = "INSERT INTO t (k1, k2, c, v) VALUES (1, 'a', 2, 'x') IF NOT EXISTS";
+        batcher.execute(ROW_1);
+        batcher.execute(conditional);
+
+        InOrder order = inOrder(pipeline);
+        order.verify(pipeline).execute(ROW_1);
+        order.verify(pipeline).execute(conditional);
+    }
+
+    @Test
+    public void groupsByTheWholePartitionKey() throws Exception {
+        String otherPartition = "INSERT INTO t (k1, k2, c, v) VALUES (1, 'b', 1, 'x')";
+        batcher.execute(ROW_1);
+        batcher.execute(otherPartition);
+        batcher.flush();
+
+        verify(pipeline).execute(ROW_1);
+        verify(pipeline).execute(otherPartition);
+        verify(pipeline, never()).executeBatch(anyList());
+    }
+
+    @Test
+    public void doesNotBatchIncompleteOrComputedKeys() throws Exception {
+        String partial = "UPDATE t SET v = 'y' WHERE k1 = 1 AND c = 1";
+        String computed = "INSERT INTO t (k1, k2, c, v) VALUES (1, 'a', blobAsInt(0x00000001), 'x')";
+        String bound = "INSERT INTO t (k1, k2, c, v) VALUES (1, ?, 1, 'x')";
+        for (String statement : Arrays.asList(partial, computed, bound)) {
+            batcher.execute(statement);
+            verify(pipeline).execute(statement);
+        }
+    }
+
+    private static ColumnMetadata column(String name, DataType type) {
+        ColumnMetadata column = mock(ColumnMetadata.class);
+        when(column.getName()).thenReturn(CqlIdentifier.fromCql(name));
+        when(column.getType()).thenReturn(type);
+        return column;
+    }
+}
@@ -0,0 +1,104 @@
+package org.codehaus.mojo.cassandra;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CqlPipelineTest {
+
+    @Test
+    public void pipelinesWrites() {
+        assertThat(CqlPipeline.isPipelined("INSERT INTO t (k, v) VALUES (1, 'a')"))
+                .isTrue();
+        assertThat(CqlPipeline.isPipelined("UPDATE t USING TTL 60 SET v = 'a' WHERE k = 1"))
+                .isTrue();
+        assertThat(CqlPipeline.isPipelined("DELETE v FROM t WHERE k = 1")).isTrue();
+    }
+
+    @Test
+    public void skipsLeadingCommentsAndWhitespace() {
+        assertThat(CqlPipeline.isPipelined("\n\t  INSERT INTO t (k) VALUES (1)"))
+                .isTrue();
+        assertThat(CqlPipeline.isPipelined("-- the first row\nINSERT INTO t (k) VALUES (1)"))
+                .isTrue();
+        assertThat(CqlPipeline.isPipelined("// the first row\n  UPDATE t SET v = 1 WHERE k = 1"))
+                .isTrue();
+        assertThat(CqlPipeline.isPipelined("/* the first row */ DELETE FROM t WHERE k = 1"))
+                .isTrue();
+        assertThat(CqlPipeline.isPipelined("/* INSERT */ SELECT * FROM t")).isFalse();
+    }
+
+    @Test
+    public void conditionalWritesAreBarriers() {
+        assertThat(CqlPipeline.isPipelined("INSERT INTO t (k) VALUES (1) IF NOT EXISTS"))
+                .isFalse();
+        assertThat(CqlPipeline.isPipelined("UPDATE t SET v = 2 WHERE k = 1 IF v = 1"))
+                .isFalse();
+        assertThat(CqlPipeline.isPipelined("UPDATE t SET v = 2 WHERE k = 1 IF EXISTS"))
+                .isFalse();
+        assertThat(CqlPipeline.isPipelined("DELETE FROM t WHERE k = 1 IF EXISTS"))
+                .isFalse();
+        assertThat(CqlPipeline.isPipelined("DELETE FROM t WHERE k = 1\nIF\tv = 1"))
+                .isFalse();
+    }
+
+    @Test
+    public void conditionalBatchesAreBarriers() {
+        assertThat(CqlPipeline.isPipelined(
+                        "BEGIN BATCH INSERT INTO t (k) VALUES (1); " + "UPDATE t SET v = 1 WHERE k = 2; APPLY BATCH"))
+                .isTrue();
+        assertThat(CqlPipeline.isPipelined("BEGIN BATCH INSERT INTO t (k) VALUES (1) IF NOT EXISTS; "
+                        + "UPDATE t SET v = 1 WHERE k = 1 IF v = 0; APPLY BATCH"))
+                .isFalse();
+    }
+
+    @Test
+    public void pipelinesCounterBatches() {
+        // counter increments commute, their order does not matter
+        assertThat(CqlPipeline.isPipelined("BEGIN COUNTER BATCH UPDATE c SET n = n + 1 WHERE k = 1; "
+                        + "UPDATE c SET n = n - 1 WHERE k = 2; APPLY BATCH"))
+                .isTrue();
+        assertThat(CqlPipeline.isPipelined("BEGIN UNLOGGED BATCH UPDATE c SET n = n + 1 WHERE k = 1; APPLY BATCH"))
+                .isTrue();
+    }
+
+    @Test
+    public void readsLowercaseKeywords() {
+        assertThat(CqlPipeline.isPipelined("insert into t (k) values (1)")).isTrue();
+        assertThat(CqlPipeline.isPipelined("insert into t (k) values (1) if not exists"))
+                .isFalse();
+        assertThat(CqlPipeline.isPipelined("begin batch delete from t where k = 1 if exists; apply batch"))
+                .isFalse();
+    }
+
+    @Test
+    public void ignoresConditionsInLiteralsAndComments() {
+        assertThat(CqlPipeline.isPipelined("INSERT INTO t (k, v) VALUES (1, 'what if it rains')"))
+                .isTrue();
+        assertThat(CqlPipeline.isPipelined("UPDATE t SET v = $$ if $$ WHERE k = 1"))
+                .isTrue();
+        assertThat(CqlPipeline.isPipelined("UPDATE t SET \"if\" = 1 WHERE k = 1"))
+                .isTrue();
+        assertThat(CqlPipeline.isPipelined("DELETE FROM t WHERE k = 1 -- if it exists"))
+                .isTrue();
+    }
+
+    @Test
+    public void otherStatementsAreBarriers() {
+        assertThat(CqlPipeline.isPipelined("SELECT * FROM t")).isFalse();
+        assertThat(CqlPipeline.isPipelined("CREATE TABLE t (k int PRIMARY KEY)"))
+                .isFalse();
+        assertThat(CqlPipeline.isPipelined("TRUNCATE t")).isFalse();
+        assertThat(CqlPipeline.isPipelined("")).isFalse();
+        assertThat(CqlPipeline.isPipelined("INSERT INTO t (k, v) VALUES (1, 'unterminated)"))
+                .isFalse();
+    }
+
+    @Test
+    public void recognisesUseStatements() {
+        assertThat(CqlPipeline.isUse("USE ks")).isTrue();
+        assertThat(CqlPipeline.isUse("-- switch\n use \"Ks\"")).isTrue();
+        assertThat(CqlPipeline.isUse("INSERT INTO use (k) VALUES (1)")).isFalse();
+        assertThat(CqlPipeline.isUse("  ")).isFalse();
+    }
+}
@@ -0,0 +1,62 @@
+package org.codehaus.mojo.cassandra;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CqlRowSinkTest {
+
+    @Test
+    public void leavesPlainFieldsUnquoted() {
+        assertThat(CqlRowSink.csv("plain text")).isEqualTo("plain text");
+    }
+
+    @Test
+    public void quotesEmptyFieldsToTellThemFromNull() {
+        assertThat(CqlRowSink.csv("")).isEqualTo("\"\"");
+    }
+
+    @Test
+    public void quotesFieldsWithSeparatorsQuotesAndLineBreaks() {
+        assertThat(CqlRowSink.csv("a,b")).isEqualTo("\"a,b\"");
+        assertThat(CqlRowSink.csv("say \"hi\"")).isEqualTo("\"say \"\"hi\"\"\"");
+        assertThat(CqlRowSink.csv("two\r\nlines")).isEqualTo("\"two\r\nlines\"");
+    }
+
+    @Test
+    public void givesBlobsAndAddressesAsText() throws UnknownHostException {
+        assertThat(CqlRowSink.text(ByteBuffer.wrap(new byte[] {0x0a, (byte) 0xff})))
+                .isEqualTo("0x0aff");
+        assertThat(CqlRowSink.text(InetAddress.getByName("127.0.0.1"))).isEqualTo("127.0.0.1");
+    }
+
+    @Test
+    public void writesScalarsAsJson() {
+        assertThat(json(null)).isEqualTo("null");
+        assertThat(json(42)).isEqualTo("42");
+        assertThat(json(true)).isEqualTo("true");
+        assertThat(json(Double.NaN)).isEqualTo("\"NaN\"");
+        assertThat(json("a \"quoted\"\n\\ line\u0001")).isEqualTo("\"a \\\"quoted\\\"\\n\\\\ line\\u0001\"");
+    }
+
+    @Test
+    public void writesCollectionsAsJson() {
+        Map<Integer, Object> map = new LinkedHashMap<>();
+        map.put(1, Arrays.asList("a", "b"));
+        map.put(2, null);
+        assertThat(json(map)).isEqualTo("{\"1\":[\"a\",\"b\"],\"2\":null}");
+    }
+
+    private static String json(Object value) {
+        StringBuilder json = new StringBuilder();
+        CqlRowSink.appendJson(json, value);
+        return json.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package org.codehaus.mojo.cassandra;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CqlScriptReaderTest {
+
+    @Test
+    public void splitsOnSemicolons() throws IOException {
+        assertThat(statements("SELECT * FROM tbl1;\nSELECT * FROM tbl2;"))
+                .containsExactly("SELECT * FROM tbl1", "SELECT * FROM tbl2");
+    }
+
+    @Test
+    public void returnsStatementWithoutTerminatingSemicolon() throws IOException {
+        assertThat(statements("SELECT * FROM tbl1;\nSELECT * FROM tbl2\n"))
+                .containsExactly("SELECT * FROM tbl1", "SELECT * FROM tbl2");
+    }
+
+    @Test
+    public void keepsSemicolonsInStringsAndQuotedIdentifiers() throws IOException {
+        assertThat(statements("INSERT INTO \"t;1\" (k) VALUES ('it''s;here');SELECT * FROM \"a\"\"b;\";"))
+                .containsExactly("INSERT INTO \"t;1\" (k) VALUES ('it''s;here')", "SELECT * FROM \"a\"\"b;\"");
+    }
+
+    @Test
+    public void keepsDollarQuotedBlocks() throws IOException {
+        assertThat(statements("CREATE FUNCTION f() RETURNS NULL ON NULL INPUT RETURNS int LANGUAGE java "
+                        + "AS $$ return 1; $$;SELECT $1 FROM t;"))
+                .containsExactly(
+                        "CREATE FUNCTION f() RETURNS NULL ON NULL INPUT RETURNS int LANGUAGE java AS $$ return 1; $$",
+                        "SELECT $1 FROM t");
+    }
+
+    @Test
+    public void dropsComments() throws IOException {
+        assertThat(statements("-- first; comment\nSELECT * FROM t1 // trailing; comment\nWHERE k = 1;"
+                        + "/* block; comment */SELECT * FROM t2 WHERE k = '--';\n-- last comment\n"))
+                .containsExactly("SELECT * FROM t1 \nWHERE k = 1", "SELECT * FROM t2 WHERE k = '--'");
+    }
+
+    @Test
+    public void keepsSingleDashesAndSlashes() throws IOException {
+        assertThat(statements("UPDATE t SET c = c - 1 WHERE k = 4/2;"))
+                .containsExactly("UPDATE t SET c = c - 1 WHERE k = 4/2");
+    }
+
+    @Test
+    public void skipsEmptyStatements() throws IOException {
+        assertThat(statements("")).isEmpty();
+        assertThat(statements(";; ;\n")).isEmpty();
+    }
+
+    private static List<String> statements(String script) throws IOException {
+        List<String> result = new ArrayList<>();
+        try (CqlScriptReader reader = new CqlScriptReader(new StringReader(script))) {
+            for (String statement = reader.nextStatement(); statement != null; statement = reader.nextStatement()) {
+                result.add(statement);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,198 @@
+package org.codehaus.mojo.cassandra;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DefaultProtocolVersion;
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.context.DriverContext;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CqlSessionsTest {
+
+    private MavenExecutionRequest request;
+
+    private CqlSessions sessions;
+
+    @Before
+    public void setUp() {
+        request = new DefaultMavenExecutionRequest();
+        MavenSession session = mock(MavenSession.class);
+        when(session.getRepositorySession()).thenReturn(new DefaultRepositorySystemSession());
+        when(session.getRequest()).thenReturn(request);
+        sessions = CqlSessions.get(session);
+    }
+
+    @Test
+    public void lendsOneSessionPerNodeWhateverTheKeyspace() {
+        CqlSession first = session(null);
+        CqlSession second = session(null);
+
+        assertThat(sessions.borrow("localhost", 9042, "", false, ks -> first)).isSameAs(first);
+        assertThat(sessions.borrow("localhost", 9042, "ks1", false, ks -> second))
+                .isSameAs(first);
+        assertThat(sessions.borrow("localhost", 9042, "ks2", false, ks -> second))
+                .isSameAs(first);
+        assertThat(sessions.borrow("localhost", 9043, "ks1", false, ks -> second))
+                .isSameAs(second);
+    }
+
+    @Test
+    public void lendsASessionPerKeyspaceBeforeProtocolV5() {
+        CqlSession node = session(null, DefaultProtocolVersion.V4);
+        CqlSession ks1 = session("ks1", DefaultProtocolVersion.V4);
+        CqlSession ks2 = session("ks2", DefaultProtocolVersion.V4);
+        Function<String, CqlSession> connect = ks -> ks == null ? node : ks.equals("ks1") ? ks1 : ks2;
+
+        assertThat(sessions.borrow("localhost", 9042, "ks1", false, connect)).isSameAs(ks1);
+        assertThat(sessions.borrow("localhost", 9042, "ks2", false, connect)).isSameAs(ks2);
+        assertThat(sessions.borrow("localhost", 9042, "ks1", false, connect)).isSameAs(ks1);
+        assertThat(sessions.borrow("localhost", 9042, "", false, connect)).isSameAs(node);
+        sessions.release(ks1);
+        sessions.release(ks1);
+
+        verify(ks1, never()).closeAsync();
+    }
+
+    @Test
+    public void closesASwitchedSessionOnceTheLastBorrowerHandsItBack() {
+        CqlSession cqlSession = session(null);
+        sessions.borrow("localhost", 9042, "", false, ks -> cqlSession);
+        sessions.borrow("localhost", 9042, "ks", false, ks -> cqlSession);
+        when(cqlSession.getKeyspace()).thenReturn(Optional.of(CqlIdentifier.fromCql("other")));
+
+        sessions.release(cqlSession);
+        verify(cqlSession, never()).closeAsync();
+        CqlSession next = session(null);
+        assertThat(sessions.borrow("localhost", 9042, "", false, ks -> next)).isSameAs(next);
+
+        sessions.release(cqlSession);
+        verify(cqlSession).closeAsync();
+    }
+
+    @Test
+    public void lendsAnExclusiveBorrowerASessionOfItsOwn() {
+        CqlSession shared = session(null);
+        CqlSession own = session(null);
+        sessions.borrow("localhost", 9042, "", false, ks -> shared);
+
+        assertThat(sessions.borrow("localhost", 9042, "ks", true, ks -> own)).isSameAs(own);
+        assertThat(sessions.borrow("localhost", 9042, "ks", false, ks -> session(null)))
+                .isSameAs(shared);
+
+        sessions.release(own);
+        verify(own).closeAsync();
+    }
+
+    @Test
+    public void doesNotLendAnExclusivelyBorrowedSession() {
+        CqlSession cqlSession = session(null);
+        CqlSession other = session(null);
+        sessions.borrow("localhost", 9042, "", false, ks -> cqlSession);
+        sessions.release(cqlSession);
+
+        assertThat(sessions.borrow("localhost", 9042, "", true, ks -> session(null)))
+                .isSameAs(cqlSession);
+        assertThat(sessions.borrow("localhost", 9042, "", false, ks -> other)).isSameAs(other);
+        sessions.release(other);
+        sessions.release(cqlSession);
+
+        verify(cqlSession).closeAsync();
+        verify(other, never()).closeAsync();
+    }
+
+    @Test
+    public void lendsAnExclusiveSessionAgainOnceHandedBack() {
+        CqlSession cqlSession = session(null);
+        sessions.borrow("localhost", 9042, "", true, ks -> cqlSession);
+        sessions.release(cqlSession);
+
+        verify(cqlSession, never()).closeAsync();
+        assertThat(sessions.borrow("localhost", 9042, "ks", false, ks -> session(null)))
+                .isSameAs(cqlSession);
+    }
+
+    @Test
+    public void closesAnExclusiveSessionWhoseKeyspaceWasSwitched() {
+        CqlSession cqlSession = session(null);
+        sessions.borrow("localhost", 9042, "", true, ks -> cqlSession);
+        when(cqlSession.getKeyspace()).thenReturn(Optional.of(CqlIdentifier.fromCql("other")));
+        sessions.release(cqlSession);
+
+        verify(cqlSession).closeAsync();
+    }
+
+    @Test
+    public void keepsAnUnswitchedSessionOpen() {
+        CqlSession cqlSession = session("ks", DefaultProtocolVersion.V4);
+        CqlSession node = session(null, DefaultProtocolVersion.V4);
+        Function<String, CqlSession> connect = ks -> ks == null ? node : cqlSession;
+        sessions.borrow("localhost", 9042, "ks", false, connect);
+        sessions.release(cqlSession);
+
+        verify(cqlSession, never()).closeAsync();
+        assertThat(sessions.borrow("localhost", 9042, "ks", false, ks -> session("ks")))
+                .isSameAs(cqlSession);
+    }
+
+    @Test
+    public void closesTheSessionsOfAStoppingNodeOnceHandedBack() {
+        CqlSession idle = session(null);
+        CqlSession borrowed = session(null);
+        CqlSession otherNode = session(null);
+        sessions.borrow("localhost", 9042, "ks", true, ks -> borrowed);
+        sessions.borrow("localhost", 9042, "", false, ks -> idle);
+        sessions.release(idle);
+        sessions.borrow("localhost", 9043, "", false, ks -> otherNode);
+
+        sessions.close("localhost", 9042);
+        verify(idle).closeAsync();
+        verify(borrowed, never()).closeAsync();
+        verify(otherNode, never()).closeAsync();
+
+        sessions.release(borrowed);
+        verify(borrowed).closeAsync();
+    }
+
+    @Test
+    public void closesAllTheSessionsWhenTheMavenSessionEnds() {
+        CqlSession idle = session(null);
+        CqlSession borrowed = session(null);
+        sessions.borrow("localhost", 9042, "ks", true, ks -> borrowed);
+        sessions.borrow("localhost", 9042, "", false, ks -> idle);
+        sessions.release(idle);
+
+        request.getExecutionListener().sessionEnded(null);
+
+        verify(idle).forceCloseAsync();
+        verify(borrowed).forceCloseAsync();
+    }
+
+    private static CqlSession session(String keyspace) {
+        return session(keyspace, DefaultProtocolVersion.V5);
+    }
+
+    private static CqlSession session(String keyspace, ProtocolVersion protocolVersion) {
+        DriverContext context = mock(DriverContext.class);
+        when(context.getProtocolVersion()).thenReturn(protocolVersion);
+        CqlSession cqlSession = mock(CqlSession.class);
+        when(cqlSession.getKeyspace()).thenReturn(Optional.ofNullable(keyspace).map(CqlIdentifier::fromCql));
+        when(cqlSession.getContext()).thenReturn(context);
+        when(cqlSession.forceCloseAsync()).thenReturn(CompletableFuture.completedFuture(null));
+        return cqlSession;
+    }
+}
@@ -0,0 +1,121 @@
+package org.codehaus.mojo.cassandra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CqlShapesTest {
+
+    @Test
+    public void replacesLiteralsOfInsert() {
+        List<String> literals = new ArrayList<>();
+        assertThat(CqlShapes.normalize(
+                        "INSERT INTO ks.t1 (k, c, v, b, u) VALUES (-1, 2.5e3, 'it''s', 0xCAFE, "
+                                + "123e4567-e89b-12d3-a456-426614174000) USING TTL 60",
+                        literals))
+                .isEqualTo("INSERT INTO ks.t1 (k, c, v, b, u) VALUES (?, ?, ?, ?, ?) USING TTL ?");
+        assertThat(literals)
+                .containsExactly("-1", "2.5e3", "'it''s'", "0xCAFE", "123e4567-e89b-12d3-a456-426614174000", "60");
+    }
+
+    @Test
+    public void sameShapeForDifferentLiterals() {
+        assertThat(CqlShapes.normalize("UPDATE t SET v = 'a', f = true WHERE k = 1", new ArrayList<>()))
+                .isEqualTo(CqlShapes.normalize("UPDATE t SET v = 'b', f = false WHERE k = 2", new ArrayList<>()))
+                .isEqualTo("UPDATE t SET v = ?, f = ? WHERE k = ?");
+    }
+
+    @Test
+    public void keepsIdentifiersOperatorsAndDurations() {
+        List<String> literals = new ArrayList<>();
+        assertThat(CqlShapes.normalize("UPDATE \"T1\" USING TTL 5 SET c2 = c2 - 1, d = 1h30m WHERE k1 = 3", literals))
+                .isEqualTo("UPDATE \"T1\" USING TTL ? SET c2 = c2 - ?, d = 1h30m WHERE k1 = ?");
+        assertThat(literals).containsExactly("5", "1", "3");
+    }
+
+    @Test
+    public void keepsCollectionLiterals() {
+        List<String> literals = new ArrayList<>();
+        assertThat(CqlShapes.normalize("INSERT INTO t (k, l, m) VALUES (1, [1, 2], {'a': 1})", literals))
+                .isEqualTo("INSERT INTO t (k, l, m) VALUES (?, [1, 2], {'a': 1})");
+        assertThat(literals).containsExactly("1");
+    }
+
+    @Test
+    public void quotesDollarStrings() {
+        List<String> literals = new ArrayList<>();
+        assertThat(CqlShapes.normalize("DELETE FROM t WHERE k = $$it's$$", literals))
+                .isEqualTo("DELETE FROM t WHERE k = ?");
+        assertThat(literals).containsExactly("'it''s'");
+    }
+
+    @Test
+    public void ignoresOtherStatements() {
+        assertThat(CqlShapes.normalize("SELECT * FROM t WHERE k = 1", new ArrayList<>()))
+                .isNull();
+        assertThat(CqlShapes.normalize("CREATE TABLE t (k int PRIMARY KEY)", new ArrayList<>()))
+                .isNull();
+    }
+
+    @Test
+    public void qualifiesTheTableByTheKeyspace() {
+        assertThat(CqlShapes.qualify("INSERT INTO t (k) VALUES (?)", "ks"))
+                .isEqualTo("INSERT INTO ks.t (k) VALUES (?)");
+        assertThat(CqlShapes.qualify("UPDATE \"T\" SET v = ? WHERE k = ?", "ks"))
+                .isEqualTo("UPDATE ks.\"T\" SET v = ? WHERE k = ?");
+        assertThat(CqlShapes.qualify("DELETE m['from'] FROM t WHERE k = ?", "\"Ks\""))
+                .isEqualTo("DELETE m['from'] FROM \"Ks\".t WHERE k = ?");
+        assertThat(CqlShapes.qualify("INSERT INTO other . t (k) VALUES (?)", "ks"))
+                .isEqualTo("INSERT INTO other . t (k) VALUES (?)");
+    }
+
+    @Test
+    public void preparesAShapeAgainAfterTheKeyspaceChanged() {
+        CqlSession cqlSession = mock(CqlSession.class);
+        when(cqlSession.prepare(any(SimpleStatement.class))).thenReturn(mock(PreparedStatement.class));
+        CqlShapes shapes = new CqlShapes(cqlSession, 10, new SystemStreamLog());
+
+        when(cqlSession.getKeyspace()).thenReturn(Optional.of(CqlIdentifier.fromCql("ks1")));
+        shapes.toStatement("INSERT INTO t (k) VALUES (1)", null);
+        shapes.toStatement("INSERT INTO t (k) VALUES (2)", null);
+        when(cqlSession.getKeyspace()).thenReturn(Optional.of(CqlIdentifier.fromCql("ks2")));
+        shapes.toStatement("INSERT INTO t (k) VALUES (3)", null);
+
+        verify(cqlSession, times(1)).prepare(SimpleStatement.newInstance("INSERT INTO ks1.t (k) VALUES (?)"));
+        verify(cqlSession, times(1)).prepare(SimpleStatement.newInstance("INSERT INTO ks2.t (k) VALUES (?)"));
+    }
+
+    @Test
+    public void preparesAShapeForEveryKeyspaceSetOnTheStatements() {
+        CqlSession cqlSession = mock(CqlSession.class);
+        when(cqlSession.prepare(any(SimpleStatement.class))).thenReturn(mock(PreparedStatement.class));
+        CqlShapes shapes = new CqlShapes(cqlSession, 10, new SystemStreamLog());
+        CqlIdentifier ks1 = CqlIdentifier.fromCql("ks1");
+        CqlIdentifier ks2 = CqlIdentifier.fromCql("ks2");
+
+        shapes.toStatement("INSERT INTO t (k) VALUES (1)", ks1);
+        shapes.toStatement("INSERT INTO t (k) VALUES (2)", ks1);
+        shapes.toStatement("INSERT INTO t (k) VALUES (3)", ks2);
+
+        verify(cqlSession, times(1))
+                .prepare(SimpleStatement.newInstance("INSERT INTO t (k) VALUES (?)")
+                        .setKeyspace(ks1));
+        verify(cqlSession, times(1))
+                .prepare(SimpleStatement.newInstance("INSERT INTO t (k) VALUES (?)")
+                        .setKeyspace(ks2));
+    }
+}
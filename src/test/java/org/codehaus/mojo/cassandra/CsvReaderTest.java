@@ -0,0 +1,71 @@
+package org.codehaus.mojo.cassandra;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CsvReaderTest {
+
+    @Test
+    public void readsRecordsOfFields() throws IOException {
+        assertThat(records("k,v\r\n1,one\r\n2,two"))
+                .containsExactly(Arrays.asList("k", "v"), Arrays.asList("1", "one"), Arrays.asList("2", "two"));
+    }
+
+    @Test
+    public void acceptsBareLineFeeds() throws IOException {
+        assertThat(records("1,one\n2,two\n")).containsExactly(Arrays.asList("1", "one"), Arrays.asList("2", "two"));
+    }
+
+    @Test
+    public void readsQuotedFieldsWithSeparatorsQuotesAndLineBreaks() throws IOException {
+        assertThat(records("1,\"a,b\",\"say \"\"hi\"\"\",\"two\r\nlines\"\r\n"))
+                .containsExactly(Arrays.asList("1", "a,b", "say \"hi\"", "two\r\nlines"));
+    }
+
+    @Test
+    public void readsEmptyFieldsAsNullUnlessQuoted() throws IOException {
+        assertThat(records("1,,\"\",\n")).containsExactly(Arrays.asList("1", null, "", null));
+    }
+
+    @Test
+    public void skipsBlankLines() throws IOException {
+        assertThat(records("\r\n1\r\n\n\r\n2\n\n")).containsExactly(Arrays.asList("1"), Arrays.asList("2"));
+    }
+
+    @Test
+    public void givesTheLineRecordsStartOn() throws IOException {
+        try (CsvReader reader = new CsvReader(new StringReader("a\n\"b\nc\"\n\nd\n"))) {
+            reader.nextRecord();
+            assertThat(reader.getRecordLine()).isEqualTo(1);
+            reader.nextRecord();
+            assertThat(reader.getRecordLine()).isEqualTo(2);
+            reader.nextRecord();
+            assertThat(reader.getRecordLine()).isEqualTo(5);
+        }
+    }
+
+    @Test
+    public void failsOnUnterminatedQuotedField() {
+        assertThatThrownBy(() -> records("1,\"open\n2,two\n"))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Unterminated quoted field starting on line 1");
+    }
+
+    private static List<List<String>> records(String csv) throws IOException {
+        List<List<String>> result = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new StringReader(csv))) {
+            for (List<String> record = reader.nextRecord(); record != null; record = reader.nextRecord()) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+}
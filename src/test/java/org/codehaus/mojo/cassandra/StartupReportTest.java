@@ -0,0 +1,78 @@
+package org.codehaus.mojo.cassandra;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StartupReportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void nestsTheNodePhasesInTheBuildPhaseTheyHappenedIn() throws IOException {
+        long start = System.currentTimeMillis() - 10000;
+        StartupReport report = new StartupReport(start);
+        report.phase("wait");
+        report.nodePhases(
+                startupLog(
+                        (start - 5000) + " YamlConfigurationLoader Configuration location: an earlier start",
+                        (start + 1000) + " YamlConfigurationLoader Configuration location: file:/conf/cassandra.yaml",
+                        (start + 2000) + " CassandraDaemon Hostname: localhost",
+                        "java.lang.IllegalStateException: a multi-line message",
+                        "\tat org.apache.cassandra.service.CassandraDaemon.setup(CassandraDaemon.java:1)",
+                        (start + 2500) + " CassandraDaemon Hostname: only the first event counts",
+                        (start + 3000) + " StorageService Cassandra version: 4.1.10",
+                        (start + 4000) + " StorageService Node localhost/127.0.0.1 state jump to NORMAL"),
+                (start + 100) + " " + (start + 600) + " " + (start + 5000));
+        report.phase("load");
+
+        assertThat(report.summary())
+                .startsWith("wait ")
+                .contains(" [jvm startup 0.5s, cassandra bootstrap 0.4s, configuration 1.0s, daemon setup 1.0s,"
+                        + " storage service 1.0s, native transport 1.0s, start notification ")
+                .contains("], load ");
+    }
+
+    @Test
+    public void reportsOnlyTheBuildPhasesWithoutNodeTimings() throws IOException {
+        StartupReport report = new StartupReport(System.currentTimeMillis());
+        report.phase("home");
+        report.phase("wait");
+        report.nodePhases(new File(folder.getRoot(), "missing.log"), null);
+
+        assertThat(report.summary()).matches("home \\d+\\.\\ds, wait \\d+\\.\\ds");
+    }
+
+    @Test
+    public void writesThePhasesAsJson() throws IOException {
+        long start = System.currentTimeMillis() - 10000;
+        StartupReport report = new StartupReport(start);
+        report.phase("wait");
+        report.nodePhases(
+                startupLog((start + 1000) + " CassandraDaemon Hostname: localhost"),
+                (start + 100) + " " + (start + 600) + " " + (start + 2000));
+        File json = new File(folder.getRoot(), "report/startup.json");
+        report.write(json);
+
+        assertThat(new String(Files.readAllBytes(json.toPath()), StandardCharsets.UTF_8))
+                .startsWith("{\n  \"startMillis\": " + start + ",\n")
+                .contains("{\"name\": \"jvm startup\", \"node\": true, \"startMillis\": " + (start + 100)
+                        + ", \"durationMillis\": 500}")
+                .contains("{\"name\": \"daemon setup\", \"node\": true, \"startMillis\": " + (start + 1000)
+                        + ", \"durationMillis\": 1000}");
+    }
+
+    private File startupLog(String... lines) throws IOException {
+        File file = folder.newFile("startup.log");
+        Files.write(file.toPath(), String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}